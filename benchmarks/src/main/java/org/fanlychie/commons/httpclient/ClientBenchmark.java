@@ -0,0 +1,94 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求吞吐量: 工具类 ( 共享的连接池 ) 与直接使用 HttpClient 的对比, 以及每次请求新建客户端的开销.
+ * 用 -t 调整并发的线程数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClientBenchmark {
+
+    /**
+     * 本地服务器
+     */
+    private LocalServer server;
+
+    /**
+     * 请求地址
+     */
+    private String url;
+
+    /**
+     * 复用的连接池客户端
+     */
+    private CloseableHttpClient pooledClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        url = server.url("/ok");
+        pooledClient = HttpClients.custom().setMaxConnTotal(200).setMaxConnPerRoute(200).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pooledClient.close();
+        HttpClientUtils.shutdown();
+        server.stop();
+    }
+
+    /**
+     * 工具类: 每次调用创建请求对象, 客户端和连接来自共享的连接池
+     */
+    @Benchmark
+    public HttpResult httpClientUtils() {
+        return HttpClientUtils.get(url).execute();
+    }
+
+    /**
+     * 直接使用同一个连接池客户端, 作为工具类开销的参照
+     */
+    @Benchmark
+    public String pooledClient() throws IOException {
+        try (CloseableHttpResponse response = pooledClient.execute(new HttpGet(url))) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+    /**
+     * 每次请求新建并关闭客户端, 每次都要建立新的连接
+     */
+    @Benchmark
+    public String newClientPerCall() throws IOException {
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+}
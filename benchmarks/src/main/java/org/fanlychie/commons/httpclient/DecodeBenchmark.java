@@ -0,0 +1,118 @@
+package org.fanlychie.commons.httpclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应内容的读取和解码, 1KB 到 100MB, 原始或 gzip 压缩. 100MB 的文本解码需要足够的堆内存, 建议 -jvmArgs -Xmx2g
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DecodeBenchmark {
+
+    /**
+     * 响应内容的字节数 ( 解压后 )
+     */
+    @Param({"1024", "102400", "10485760", "104857600"})
+    public int size;
+
+    /**
+     * 响应内容是否 gzip 压缩
+     */
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    /**
+     * 本地服务器
+     */
+    private LocalServer server;
+
+    /**
+     * 请求地址
+     */
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        url = server.url("/body?size=" + size + (gzip ? "&gzip" : ""));
+        // 预先生成响应内容
+        LocalServer.body(size, gzip);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HttpClientUtils.shutdown();
+        server.stop();
+    }
+
+    /**
+     * 解码为字符串
+     */
+    @Benchmark
+    public HttpResult text() {
+        return HttpClientUtils.get(url).execute();
+    }
+
+    /**
+     * 读取为字节数组, 不解码
+     */
+    @Benchmark
+    public void bytes(Blackhole blackhole) {
+        HttpClientUtils.get(url).executeForBytes((statusCode, bytes) -> blackhole.consume(bytes));
+    }
+
+    /**
+     * 读入池化的缓冲区
+     */
+    @Benchmark
+    public void buffer(Blackhole blackhole) {
+        HttpClientUtils.get(url).executeForBuffer((statusCode, buffer) -> blackhole.consume(buffer.get(0)));
+    }
+
+    /**
+     * 以流的方式读完, 不保留内容
+     */
+    @Benchmark
+    public long stream() {
+        return HttpClientUtils.get(url).executeForStream((statusCode, in) -> drain(in));
+    }
+
+    /**
+     * 读完输入流
+     *
+     * @param in 输入流
+     * @return 读取的字节数
+     * @throws IOException 读取失败
+     */
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+}
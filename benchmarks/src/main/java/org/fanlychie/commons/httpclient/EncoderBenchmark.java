@@ -0,0 +1,109 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.Consts;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.EntityBuilder;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询参数和表单的编码: 编码器与 URIBuilder、EntityBuilder 的对比. 配合 -prof gc 查看每次操作的分配字节数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncoderBenchmark {
+
+    /**
+     * 参数的个数
+     */
+    @Param({"4", "32"})
+    public int parameters;
+
+    /**
+     * 参数值是否包含需要编码的中文和符号
+     */
+    @Param({"false", "true"})
+    public boolean unicode;
+
+    /**
+     * 原地址
+     */
+    private URI uri;
+
+    /**
+     * 参数
+     */
+    private List<NameValuePair> pairs;
+
+    @Setup
+    public void setUp() {
+        uri = URI.create("http://localhost:8080/api/v1/users?tenant=demo");
+        pairs = new ArrayList<>(parameters);
+        for (int i = 0; i < parameters; i++) {
+            pairs.add(new BasicNameValuePair("name" + i, unicode ? "中文 value&" + i : "value" + i));
+        }
+    }
+
+    /**
+     * URIBuilder: 原地址转为字符串后作为路径重新编码, 再解析为 URI
+     */
+    @Benchmark
+    public URI queryUriBuilder() throws URISyntaxException {
+        URIBuilder builder = new URIBuilder().setCharset(Consts.UTF_8);
+        for (NameValuePair pair : pairs) {
+            builder.addParameter(pair.getName(), pair.getValue());
+        }
+        return builder.setPath(uri.toString()).build();
+    }
+
+    /**
+     * 编码器: 参数直接编码后追加到原地址上
+     */
+    @Benchmark
+    public URI queryUrlEncoder() {
+        return UrlEncoder.appendQuery(uri, pairs);
+    }
+
+    /**
+     * EntityBuilder: UrlEncodedFormEntity 先格式化为字符串再按字符集编码
+     */
+    @Benchmark
+    public byte[] formEntityBuilder() throws IOException {
+        return EntityUtils.toByteArray(EntityBuilder.create()
+                .setContentType(ContentTypeConstant.APPLICATION_FORM_URLENCODED)
+                .setParameters(pairs)
+                .build());
+    }
+
+    /**
+     * 编码器: 直接编码为字节
+     */
+    @Benchmark
+    public byte[] formUrlEncoder() {
+        return UrlEncoder.encodeForm(pairs);
+    }
+
+}
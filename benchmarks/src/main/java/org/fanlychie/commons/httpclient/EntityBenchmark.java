@@ -0,0 +1,112 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求内容的构建: preHandle 构建表单实体并序列化, 不发送请求. 与请求类同包以调用 preHandle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityBenchmark {
+
+    /**
+     * 表单参数的个数
+     */
+    @Param({"4", "64"})
+    public int parameters;
+
+    /**
+     * 上传内容的字节数
+     */
+    @Param({"1024", "1048576"})
+    public int fileSize;
+
+    /**
+     * 上传的文件
+     */
+    private File file;
+
+    /**
+     * 丢弃写入的内容, 只统计字节数
+     */
+    private final OutputStream discard = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), LocalServer.body(fileSize, false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * application/x-www-form-urlencoded 表单, 参数值需要 URL 编码
+     */
+    @Benchmark
+    public HttpEntity urlencodedForm() throws Exception {
+        HttpPost post = new HttpPost("http://localhost/form");
+        HttpUrlencodedFormRequest request = new HttpUrlencodedFormRequest(post);
+        for (int i = 0; i < parameters; i++) {
+            request.addParameter("name" + i, "中文 value&" + i);
+        }
+        request.preHandle(post);
+        post.getEntity().writeTo(discard);
+        return post.getEntity();
+    }
+
+    /**
+     * multipart/form-data 表单, 包含一个文件
+     */
+    @Benchmark
+    public HttpEntity multipartForm(Blackhole blackhole) throws Exception {
+        HttpPost post = new HttpPost("http://localhost/form");
+        HttpMultipartFormRequest request = new HttpMultipartFormRequest(post);
+        for (int i = 0; i < parameters; i++) {
+            request.addParameter("name" + i, "中文 value&" + i);
+        }
+        request.addParameter("file", file);
+        request.preHandle(post);
+        blackhole.consume(post.getEntity().getContentLength());
+        post.getEntity().writeTo(discard);
+        return post.getEntity();
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.fanlychie.commons.httpclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 基准测试使用的本地 HTTP 服务器, 只监听回环地址. 提供的接口:
+ * <pre>
+ * /ok                     返回 "ok"
+ * /echo                   读完请求内容后返回 "ok"
+ * /body?size=N            返回 N 字节的文本内容
+ * /body?size=N&amp;gzip       返回 gzip 压缩的 N 字节的文本内容
+ * </pre>
+ * 响应内容预先生成并缓存, 服务器端的开销不计入客户端的测量结果
+ */
+final class LocalServer {
+
+    static {
+        // 关闭 Nagle 算法, 否则响应头和响应内容分开写出时会被延迟确认拖慢约40毫秒
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * 响应内容, key 为 size 或 size:gzip
+     */
+    private static final ConcurrentMap<String, byte[]> BODIES = new ConcurrentHashMap<>();
+
+    /**
+     * HTTP 服务器
+     */
+    private final HttpServer server;
+
+    /**
+     * 启动服务器
+     *
+     * @throws IOException 启动失败
+     */
+    LocalServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/ok", exchange -> send(exchange, "ok".getBytes(), null));
+        server.createContext("/echo", exchange -> {
+            drain(exchange.getRequestBody());
+            send(exchange, "ok".getBytes(), null);
+        });
+        server.createContext("/body", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            boolean gzip = query.contains("gzip");
+            int size = Integer.parseInt(query.replaceAll(".*size=(\\d+).*", "$1"));
+            send(exchange, body(size, gzip), gzip ? "gzip" : null);
+        });
+        server.start();
+    }
+
+    /**
+     * 服务器的地址
+     *
+     * @param path 请求路径
+     * @return URL
+     */
+    String url(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * 停止服务器
+     */
+    void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * 预先生成响应内容
+     *
+     * @param size 响应内容的字节数 ( 压缩前 )
+     * @param gzip 是否压缩
+     * @return 响应内容
+     */
+    static byte[] body(int size, boolean gzip) {
+        return BODIES.computeIfAbsent(size + (gzip ? ":gzip" : ""), key -> {
+            // 可压缩的伪随机文本, 压缩率接近真实的 JSON
+            byte[] alphabet = "{\"id\":1234567890,\"name\":\"commons-httpclient\",\"tags\":[\"a\",\"b\"]}\n".getBytes();
+            byte[] bytes = new byte[size];
+            Random random = new Random(size);
+            for (int i = 0; i < size; i++) {
+                bytes[i] = alphabet[(i + random.nextInt(4)) % alphabet.length];
+            }
+            if (!gzip) {
+                return bytes;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size / 4 + 64);
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                gzipOut.write(bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return out.toByteArray();
+        });
+    }
+
+    /**
+     * 发送响应
+     *
+     * @param exchange        HttpExchange
+     * @param body            响应内容
+     * @param contentEncoding 压缩方式
+     * @throws IOException 发送失败
+     */
+    private static void send(HttpExchange exchange, byte[] body, String contentEncoding) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        if (contentEncoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", contentEncoding);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * 读完请求内容
+     *
+     * @param in 输入流
+     * @throws IOException 读取失败
+     */
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+            // 丢弃
+        }
+        in.close();
+    }
+
+}
@@ -0,0 +1,182 @@
+package org.fanlychie.commons.httpclient;
+
+import org.fanlychie.commons.httpclient.exception.ConcurrencyLimitExceededException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按主机的自适应并发限制器, 采用 AIMD ( 加性增、乘性减 ) 算法: 请求成功且耗时低于阈值时并发限制缓慢增加
+ * ( 每个限制周期约增加1 ), 请求失败或耗时超过阈值时并发限制按比例减小. 发往同一主机的并发请求数达到限制时,
+ * 新的请求直接抛出 {@link ConcurrencyLimitExceededException}, 不会在变慢的主机上堆积等待的线程
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 各主机的并发状态
+     */
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * 初始的并发限制, 默认20
+     */
+    private int initialLimit = 20;
+
+    /**
+     * 并发限制的下限, 默认1
+     */
+    private int minLimit = 1;
+
+    /**
+     * 并发限制的上限, 默认200
+     */
+    private int maxLimit = 200;
+
+    /**
+     * 请求耗时的阈值, 单位毫秒, 超过时视为过载, 默认1秒
+     */
+    private long latencyThreshold = 1000;
+
+    /**
+     * 过载时并发限制的缩小比例, 默认0.9
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 设置并发限制的范围, 默认初始20, 最小1, 最大200
+     *
+     * @param initialLimit 初始的并发限制
+     * @param minLimit     并发限制的下限
+     * @param maxLimit     并发限制的上限
+     * @return AdaptiveConcurrencyLimiter
+     */
+    public AdaptiveConcurrencyLimiter setLimits(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit: " + initialLimit
+                    + ", minLimit: " + minLimit + ", maxLimit: " + maxLimit);
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * 设置请求耗时的阈值, 默认1秒; 超过阈值的请求视为过载, 并发限制按比例减小
+     *
+     * @param latencyThreshold 耗时阈值, 单位毫秒
+     * @return AdaptiveConcurrencyLimiter
+     */
+    public AdaptiveConcurrencyLimiter setLatencyThreshold(long latencyThreshold) {
+        this.latencyThreshold = latencyThreshold;
+        return this;
+    }
+
+    /**
+     * 设置过载时并发限制的缩小比例, 默认0.9
+     *
+     * @param backoffRatio 缩小比例, 0 到 1 之间
+     * @return AdaptiveConcurrencyLimiter
+     */
+    public AdaptiveConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio: " + backoffRatio);
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * 主机当前的并发限制
+     *
+     * @param host 主机, 格式为 scheme://host:port
+     * @return 并发限制
+     */
+    public int getLimit(String host) {
+        Limit limit = limits.get(host);
+        return limit != null ? limit.getLimit() : initialLimit;
+    }
+
+    /**
+     * 发往主机的进行中的请求数
+     *
+     * @param host 主机, 格式为 scheme://host:port
+     * @return 请求数
+     */
+    public int getInFlight(String host) {
+        Limit limit = limits.get(host);
+        return limit != null ? limit.getInFlight() : 0;
+    }
+
+    /**
+     * 请求发出前获取许可
+     *
+     * @param host 主机
+     * @throws ConcurrencyLimitExceededException 并发请求数达到限制时
+     */
+    void acquire(String host) {
+        Limit limit = limits.computeIfAbsent(host, k -> new Limit(initialLimit));
+        if (!limit.tryAcquire()) {
+            throw new ConcurrencyLimitExceededException(host, limit.getLimit());
+        }
+    }
+
+    /**
+     * 请求完成后归还许可并调整并发限制
+     *
+     * @param host     主机
+     * @param duration 请求耗时, 单位毫秒
+     * @param failure  是否失败
+     */
+    void release(String host, long duration, boolean failure) {
+        limits.get(host).release(failure || duration > latencyThreshold);
+    }
+
+    /**
+     * 单个主机的并发状态
+     */
+    private final class Limit {
+
+        /**
+         * 并发限制, 带小数以便缓慢增加
+         */
+        private double limit;
+
+        /**
+         * 进行中的请求数
+         */
+        private int inFlight;
+
+        Limit(int initialLimit) {
+            this.limit = initialLimit;
+        }
+
+        synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        synchronized void release(boolean overloaded) {
+            inFlight--;
+            if (overloaded) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight + 1 >= (int) limit / 2) {
+                // 只在并发限制被充分使用时增加, 避免空闲时无限增长
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.fanlychie.commons.httpclient;
+
+/**
+ * 批量请求中单个请求的结果, 请求失败时保存异常而不是中断整批请求
+ *
+ * @param <T> 请求结果的类型
+ */
+public class BatchResult<T> {
+
+    /**
+     * 请求在批量请求中的序号, 从0开始
+     */
+    private final int index;
+
+    /**
+     * 请求
+     */
+    private final HttpClientRequest request;
+
+    /**
+     * 请求结果
+     */
+    private final T result;
+
+    /**
+     * 请求失败的异常
+     */
+    private final Throwable exception;
+
+    /**
+     * 创建单个请求的结果
+     *
+     * @param index     请求的序号
+     * @param request   请求
+     * @param result    请求结果
+     * @param exception 请求失败的异常
+     */
+    BatchResult(int index, HttpClientRequest request, T result, Throwable exception) {
+        this.index = index;
+        this.request = request;
+        this.result = result;
+        this.exception = exception;
+    }
+
+    /**
+     * 请求在批量请求中的序号
+     *
+     * @return 序号, 从0开始
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 请求
+     *
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * 请求结果
+     *
+     * @return 请求结果, 请求失败时为 null
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * 请求失败的异常
+     *
+     * @return 异常, 请求成功时为 null
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * 请求是否成功 ( 没有抛出异常, 不检查状态码 )
+     *
+     * @return 成功返回 true
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + index + " " + (exception == null ? result : exception);
+    }
+
+}
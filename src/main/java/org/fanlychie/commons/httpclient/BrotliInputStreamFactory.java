@@ -0,0 +1,24 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.client.entity.InputStreamFactory;
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Brotli 解压输入流工厂, 需要自行引入 org.brotli:dec 依赖
+ */
+final class BrotliInputStreamFactory implements InputStreamFactory {
+
+    /**
+     * Brotli 解码器的类名
+     */
+    static final String DECODER_CLASS_NAME = "org.brotli.dec.BrotliInputStream";
+
+    @Override
+    public InputStream create(InputStream in) throws IOException {
+        return new BrotliInputStream(in);
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 带缓存的 DNS 解析器, 解析结果在有效期内直接返回; 有效期过半后再次访问时在后台重新解析,
+ * 重新解析期间和解析失败时继续返回旧的结果, 请求线程不必等待 DNS. 解析失败的结果在较短的有效期内同样被缓存
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    /**
+     * 后台重新解析的线程
+     */
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "http-dns-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 实际执行解析的解析器
+     */
+    private final DnsResolver delegate;
+
+    /**
+     * 解析结果的有效期, 单位毫秒
+     */
+    private final long ttl;
+
+    /**
+     * 解析失败的结果的有效期, 单位毫秒
+     */
+    private final long negativeTtl;
+
+    /**
+     * 解析结果
+     */
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 创建使用系统解析器的 DNS 解析器, 解析结果的有效期为60秒, 解析失败的结果的有效期为5秒
+     */
+    public CachingDnsResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE, 60 * 1000, 5 * 1000);
+    }
+
+    /**
+     * 创建 DNS 解析器
+     *
+     * @param delegate    实际执行解析的解析器
+     * @param ttl         解析结果的有效期, 单位毫秒
+     * @param negativeTtl 解析失败的结果的有效期, 单位毫秒, 为0时不缓存
+     */
+    public CachingDnsResolver(DnsResolver delegate, long ttl, long negativeTtl) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        Entry entry = cache.get(host);
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expireTime) {
+            if (entry.addresses != null && now >= entry.refreshTime && entry.refreshing.compareAndSet(false, true)) {
+                // 有效期过半, 后台重新解析
+                REFRESHER.execute(() -> refresh(host, entry));
+            }
+            return entry.get();
+        }
+        return load(host).get();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 解析并缓存结果
+     *
+     * @param host 主机名
+     * @return Entry
+     */
+    private Entry load(String host) {
+        Entry entry;
+        try {
+            entry = new Entry(delegate.resolve(host), null, ttl);
+        } catch (UnknownHostException e) {
+            entry = new Entry(null, e, negativeTtl);
+        }
+        if (entry.expireTime > System.currentTimeMillis()) {
+            cache.put(host, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 后台重新解析, 失败时保留旧的结果直到其过期
+     *
+     * @param host     主机名
+     * @param previous 旧的结果
+     */
+    private void refresh(String host, Entry previous) {
+        try {
+            cache.put(host, new Entry(delegate.resolve(host), null, ttl));
+        } catch (UnknownHostException e) {
+            previous.refreshing.set(false);
+        }
+    }
+
+    /**
+     * 解析结果
+     */
+    private static final class Entry {
+
+        private final InetAddress[] addresses;
+
+        private final UnknownHostException exception;
+
+        private final long expireTime;
+
+        private final long refreshTime;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(InetAddress[] addresses, UnknownHostException exception, long ttl) {
+            long now = System.currentTimeMillis();
+            this.addresses = addresses;
+            this.exception = exception;
+            this.expireTime = now + ttl;
+            this.refreshTime = now + ttl / 2;
+        }
+
+        InetAddress[] get() throws UnknownHostException {
+            if (addresses == null) {
+                UnknownHostException e = new UnknownHostException(exception.getMessage());
+                e.initCause(exception);
+                throw e;
+            }
+            return addresses.clone();
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 明文连接的连接工厂, 创建由 {@link SocketChannel} 支持的阻塞套接字; 读写行为与普通套接字相同,
+ * 但可以取得套接字通道, 使上传的文件内容通过 {@link java.nio.channels.FileChannel#transferTo} 由内核直接发送.
+ * 与普通套接字不同, 阻塞在通道上的线程被中断时通道以 {@link java.nio.channels.ClosedByInterruptException} 关闭,
+ * 因此只用于文件上传请求的连接池
+ */
+final class ChannelSocketFactory extends PlainConnectionSocketFactory {
+
+    /**
+     * 单例
+     */
+    static final ChannelSocketFactory INSTANCE = new ChannelSocketFactory();
+
+    /**
+     * 私有化
+     */
+    private ChannelSocketFactory() {
+
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return SocketChannel.open().socket();
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.fanlychie.commons.httpclient;
+
+/**
+ * 分段下载的校验器, 每个分段下载完成后以该分段内容的摘要回调, 校验不通过的分段会被重新下载
+ *
+ * @see HttpDownload#setChecksum(String, ChunkVerifier)
+ */
+@FunctionalInterface
+public interface ChunkVerifier {
+
+    /**
+     * 校验一个分段
+     *
+     * @param index  分段的序号, 从0开始
+     * @param offset 分段在文件中的起始位置
+     * @param length 分段的字节数
+     * @param digest 分段内容的摘要
+     * @return 校验通过返回 true
+     */
+    boolean verify(int index, long offset, long length, byte[] digest);
+
+}
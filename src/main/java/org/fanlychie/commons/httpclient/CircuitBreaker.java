@@ -0,0 +1,308 @@
+package org.fanlychie.commons.httpclient;
+
+import org.fanlychie.commons.httpclient.exception.CircuitBreakerOpenException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按主机熔断的熔断器. 每个主机统计最近若干次请求的失败率和慢请求率, 任一超过阈值时打开熔断器,
+ * 打开期间发往该主机的请求直接抛出 {@link CircuitBreakerOpenException}; 经过等待时间后进入半开状态,
+ * 放行少量试探请求, 试探请求的失败率和慢请求率都低于阈值时关闭熔断器, 否则重新打开.
+ * I/O 异常和 5xx 响应计为失败
+ */
+public class CircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+
+        /**
+         * 关闭, 请求正常放行
+         */
+        CLOSED,
+
+        /**
+         * 打开, 请求直接被拒绝
+         */
+        OPEN,
+
+        /**
+         * 半开, 只放行少量试探请求
+         */
+        HALF_OPEN
+
+    }
+
+    /**
+     * 各主机的熔断状态
+     */
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * 失败率阈值, 百分比, 默认50
+     */
+    private int failureRateThreshold = 50;
+
+    /**
+     * 慢请求率阈值, 百分比, 默认100 ( 即不因慢请求熔断 )
+     */
+    private int slowCallRateThreshold = 100;
+
+    /**
+     * 慢请求的耗时阈值, 单位毫秒, 默认5秒
+     */
+    private long slowCallDuration = 5 * 1000;
+
+    /**
+     * 统计的最近请求数, 默认100
+     */
+    private int windowSize = 100;
+
+    /**
+     * 计算失败率所需的最少请求数, 默认20
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * 打开后转为半开前的等待时间, 单位毫秒, 默认30秒
+     */
+    private long openDuration = 30 * 1000;
+
+    /**
+     * 半开状态下放行的试探请求数, 默认5
+     */
+    private int halfOpenCalls = 5;
+
+    /**
+     * 设置失败率阈值, 默认50%
+     *
+     * @param failureRateThreshold 失败率阈值, 百分比
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * 设置慢请求阈值, 默认不因慢请求熔断
+     *
+     * @param slowCallRateThreshold 慢请求率阈值, 百分比
+     * @param slowCallDuration      慢请求的耗时阈值, 单位毫秒
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker setSlowCallThreshold(int slowCallRateThreshold, long slowCallDuration) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        return this;
+    }
+
+    /**
+     * 设置统计窗口, 默认统计最近100次请求, 至少20次请求后才计算失败率; 只作用于之后首次请求的主机
+     *
+     * @param windowSize   统计的最近请求数
+     * @param minimumCalls 计算失败率所需的最少请求数
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker setWindow(int windowSize, int minimumCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        return this;
+    }
+
+    /**
+     * 设置打开后转为半开前的等待时间, 默认30秒
+     *
+     * @param openDuration 等待时间, 单位毫秒
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+        return this;
+    }
+
+    /**
+     * 设置半开状态下放行的试探请求数, 默认5
+     *
+     * @param halfOpenCalls 试探请求数
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * 主机当前的熔断状态
+     *
+     * @param host 主机, 格式为 scheme://host:port
+     * @return State
+     */
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit != null ? circuit.getState() : State.CLOSED;
+    }
+
+    /**
+     * 请求发出前获取许可
+     *
+     * @param host 主机
+     * @throws CircuitBreakerOpenException 熔断器打开时
+     */
+    void acquire(String host) {
+        if (!circuits.computeIfAbsent(host, k -> new Circuit(windowSize)).tryAcquire()) {
+            throw new CircuitBreakerOpenException(host);
+        }
+    }
+
+    /**
+     * 归还未使用的许可, 请求没有发出时调用
+     *
+     * @param host 主机
+     */
+    void cancel(String host) {
+        circuits.get(host).cancel();
+    }
+
+    /**
+     * 记录请求的结果
+     *
+     * @param host     主机
+     * @param duration 请求耗时, 单位毫秒
+     * @param failure  是否失败
+     */
+    void record(String host, long duration, boolean failure) {
+        circuits.get(host).record(failure, duration >= slowCallDuration);
+    }
+
+    /**
+     * 单个主机的熔断状态
+     */
+    private final class Circuit {
+
+        /**
+         * 最近请求的结果, 第0位表示失败, 第1位表示慢请求
+         */
+        private final byte[] outcomes;
+
+        /**
+         * 下一个结果的写入位置
+         */
+        private int index;
+
+        /**
+         * 窗口中的请求数
+         */
+        private int calls;
+
+        /**
+         * 窗口中的失败数
+         */
+        private int failures;
+
+        /**
+         * 窗口中的慢请求数
+         */
+        private int slowCalls;
+
+        /**
+         * 当前状态
+         */
+        private State state = State.CLOSED;
+
+        /**
+         * 打开的时间, 单位毫秒
+         */
+        private long openedAt;
+
+        /**
+         * 半开状态下已放行的试探请求数
+         */
+        private int trialCalls;
+
+        Circuit(int windowSize) {
+            this.outcomes = new byte[windowSize];
+        }
+
+        synchronized State getState() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openDuration) {
+                    return false;
+                }
+                // 等待时间已过, 进入半开状态
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialCalls >= halfOpenCalls) {
+                    return false;
+                }
+                trialCalls++;
+            }
+            return true;
+        }
+
+        synchronized void cancel() {
+            if (state == State.HALF_OPEN && trialCalls > 0) {
+                trialCalls--;
+            }
+        }
+
+        synchronized void record(boolean failure, boolean slow) {
+            if (state == State.OPEN) {
+                // 打开之前发出的请求, 不再统计
+                return;
+            }
+            int slot = index;
+            if (calls == outcomes.length) {
+                // 窗口已满, 移除最早的结果
+                failures -= outcomes[slot] & 1;
+                slowCalls -= (outcomes[slot] >> 1) & 1;
+            } else {
+                calls++;
+            }
+            outcomes[slot] = (byte) ((failure ? 1 : 0) | (slow ? 2 : 0));
+            failures += failure ? 1 : 0;
+            slowCalls += slow ? 1 : 0;
+            index = (slot + 1) % outcomes.length;
+            if (state == State.HALF_OPEN) {
+                if (calls >= halfOpenCalls) {
+                    transition(exceedsThreshold() ? State.OPEN : State.CLOSED);
+                }
+            } else if (calls >= minimumCalls && exceedsThreshold()) {
+                transition(State.OPEN);
+            }
+        }
+
+        /**
+         * 失败率或慢请求率是否超过阈值
+         */
+        private boolean exceedsThreshold() {
+            return failures * 100 >= failureRateThreshold * calls
+                    || (slowCallRateThreshold < 100 && slowCalls * 100 >= slowCallRateThreshold * calls);
+        }
+
+        /**
+         * 切换状态并清空统计窗口
+         */
+        private void transition(State target) {
+            state = target;
+            openedAt = System.currentTimeMillis();
+            trialCalls = 0;
+            index = 0;
+            calls = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,231 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HTTP;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 压缩实体, 发送时以流的方式压缩被包装的实体, 压缩后的长度未知, 使用分块传输编码
+ */
+class CompressingEntity extends HttpEntityWrapper {
+
+    /**
+     * gzip 压缩
+     */
+    static final String GZIP = "gzip";
+
+    /**
+     * deflate 压缩
+     */
+    static final String DEFLATE = "deflate";
+
+    /**
+     * 压缩方式
+     */
+    private final String contentEncoding;
+
+    /**
+     * 创建压缩实体
+     *
+     * @param entity          被包装的实体
+     * @param contentEncoding 压缩方式, gzip 或 deflate
+     */
+    private CompressingEntity(HttpEntity entity, String contentEncoding) {
+        super(entity);
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * 按阈值压缩实体, 长度已知且小于阈值的实体不压缩
+     *
+     * @param entity          实体
+     * @param contentEncoding 压缩方式, 为 null 时不压缩
+     * @param threshold       压缩阈值, 单位字节
+     * @return 压缩实体或原实体
+     */
+    static HttpEntity compress(HttpEntity entity, String contentEncoding, int threshold) {
+        if (contentEncoding == null || entity == null) {
+            return entity;
+        }
+        long length = entity.getContentLength();
+        if (length >= 0 && length < threshold) {
+            return entity;
+        }
+        return new CompressingEntity(entity, contentEncoding);
+    }
+
+    /**
+     * 校验压缩方式
+     *
+     * @param contentEncoding 压缩方式
+     * @return 压缩方式
+     */
+    static String checkContentEncoding(String contentEncoding) {
+        if (contentEncoding != null && !GZIP.equalsIgnoreCase(contentEncoding) && !DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            throw new IllegalArgumentException("unsupported content encoding: " + contentEncoding);
+        }
+        return contentEncoding != null ? contentEncoding.toLowerCase() : null;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return new BasicHeader(HTTP.CONTENT_ENCODING, contentEncoding);
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return true;
+    }
+
+    /**
+     * 读取时压缩的内容输入流, 异步客户端通过它发送请求内容
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        InputStream content = wrappedEntity.getContent();
+        return GZIP.equals(contentEncoding) ? new GzipCompressingInputStream(content) : new DeflaterInputStream(content);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        // 关闭压缩流以释放压缩器, 但不关闭底层的连接输出流
+        OutputStream shield = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+        try (DeflaterOutputStream compressed = GZIP.equals(contentEncoding)
+                ? new GZIPOutputStream(shield, 8192) : new DeflaterOutputStream(shield)) {
+            wrappedEntity.writeTo(compressed);
+        }
+    }
+
+    /**
+     * 读取时以 gzip 格式压缩的输入流: 与 {@link GZIPOutputStream} 相同的头部, 原始 deflate 数据, 以及 CRC32 和原始长度的尾部
+     */
+    private static final class GzipCompressingInputStream extends InputStream {
+
+        /**
+         * gzip 头部
+         */
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+        /**
+         * 原始内容的校验和
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * 压缩器, 不带 zlib 头部和尾部
+         */
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        /**
+         * 压缩后的内容
+         */
+        private final DeflaterInputStream deflated;
+
+        /**
+         * 已读取的头部字节数
+         */
+        private int headerPosition;
+
+        /**
+         * gzip 尾部, 压缩内容读完后生成
+         */
+        private byte[] trailer;
+
+        /**
+         * 已读取的尾部字节数
+         */
+        private int trailerPosition;
+
+        GzipCompressingInputStream(InputStream in) {
+            this.deflated = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater, 8192);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (headerPosition < HEADER.length) {
+                int n = Math.min(len, HEADER.length - headerPosition);
+                System.arraycopy(HEADER, headerPosition, b, off, n);
+                headerPosition += n;
+                return n;
+            }
+            if (trailer == null) {
+                int n = deflated.read(b, off, len);
+                if (n != -1) {
+                    return n;
+                }
+                trailer = trailer(crc.getValue(), deflater.getBytesRead());
+            }
+            if (trailerPosition == trailer.length) {
+                return -1;
+            }
+            int n = Math.min(len, trailer.length - trailerPosition);
+            System.arraycopy(trailer, trailerPosition, b, off, n);
+            trailerPosition += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                deflated.close();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /**
+         * gzip 尾部, CRC32 和原始长度 ( 模 2^32 ) 均为小端序
+         *
+         * @param crc    原始内容的校验和
+         * @param length 原始内容的字节数
+         * @return 尾部
+         */
+        private static byte[] trailer(long crc, long length) {
+            byte[] trailer = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (crc >>> (i * 8));
+                trailer[i + 4] = (byte) (length >>> (i * 8));
+            }
+            return trailer;
+        }
+
+    }
+
+}
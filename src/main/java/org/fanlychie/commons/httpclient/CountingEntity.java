@@ -0,0 +1,132 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.fanlychie.commons.httpclient.exception.ResponseTooLargeException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * 统计读取的响应内容字节数的实体, 包装响应实体, 每次读取后以读到的字节数回调; 内容输入流仍可以中止连接
+ */
+class CountingEntity extends HttpEntityWrapper {
+
+    /**
+     * 读取字节数的回调, 可以抛出运行时异常中止读取
+     */
+    private final LongConsumer counter;
+
+    /**
+     * 包装后的内容输入流, 多次获取时返回同一个
+     */
+    private InputStream content;
+
+    /**
+     * 包装响应实体
+     *
+     * @param entity  响应实体
+     * @param counter 读取字节数的回调
+     */
+    CountingEntity(HttpEntity entity, LongConsumer counter) {
+        super(entity);
+        this.counter = counter;
+    }
+
+    /**
+     * 包装响应实体, 读取超出最大字节数时先断开连接再抛出异常
+     *
+     * @param entity 响应实体
+     * @param limit  最大字节数
+     * @param abort  断开连接
+     * @return CountingEntity
+     */
+    static CountingEntity limit(HttpEntity entity, long limit, Runnable abort) {
+        long[] count = new long[1];
+        return new CountingEntity(entity, n -> {
+            count[0] += n;
+            if (count[0] > limit) {
+                abort.run();
+                throw new ResponseTooLargeException(limit, count[0]);
+            }
+        });
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (content == null || wrappedEntity.isRepeatable()) {
+            content = new CountingInputStream(wrappedEntity.getContent());
+        }
+        return content;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = getContent()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * 统计读取字节数的输入流
+     */
+    private final class CountingInputStream extends FilterInputStream implements ConnectionReleaseTrigger {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                counter.accept(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                counter.accept(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            counter.accept(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void releaseConnection() throws IOException {
+            if (in instanceof ConnectionReleaseTrigger) {
+                ((ConnectionReleaseTrigger) in).releaseConnection();
+            } else {
+                close();
+            }
+        }
+
+        @Override
+        public void abortConnection() throws IOException {
+            if (in instanceof ConnectionReleaseTrigger) {
+                ((ConnectionReleaseTrigger) in).abortConnection();
+            } else {
+                close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,706 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.net.URIAuthority;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.fanlychie.commons.httpclient.exception.ResponseHeaderTooLargeException;
+import org.fanlychie.commons.httpclient.exception.ResponseTooLargeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP/2 传输, 基于 httpclient5 的 HTTP/2 异步客户端, 同一主机的并发请求多路复用同一个连接;
+ * 请求和响应在本类中与 httpclient 4 的对象相互转换, 请求内容和响应内容在内存中缓冲
+ */
+final class Http2Transport {
+
+    /**
+     * httpclient5 的 HTTP/2 客户端构建器类名, 用于检查类路径中是否引入了 httpclient5
+     */
+    static final String CLIENT_CLASS_NAME = "org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder";
+
+    /**
+     * HTTP/2 协议版本
+     */
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    /**
+     * HTTP/2 中禁止出现的连接级别的请求头, 以及由传输层生成的请求头
+     */
+    private static final Set<String> EXCLUDED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "host", "content-length"));
+
+    /**
+     * 已创建的客户端
+     */
+    private static final ConcurrentMap<HttpClientKey, CloseableHttpAsyncClient> CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * 每个主机的并发流的限制器, HTTP/2 客户端到同一主机只使用一个连接
+     */
+    private static final ConcurrentMap<HttpClientKey, ConcurrentMap<String, StreamLimiter>> LIMITERS = new ConcurrentHashMap<>();
+
+    /**
+     * 每个连接上客户端发起的最大并发流数量, 默认100
+     */
+    private static volatile int maxConcurrentStreams = 100;
+
+    /**
+     * 每个流的初始流量控制窗口大小, 默认64KB
+     */
+    private static volatile int initialWindowSize = 65535;
+
+    /**
+     * 私有化
+     */
+    private Http2Transport() {
+
+    }
+
+    /**
+     * 以 HTTP/2 执行请求
+     *
+     * @param key      客户端配置
+     * @param request  HTTP 请求
+     * @param callback 请求结果的回调, 在 I/O 线程上执行
+     * @return 可以用于取消请求的 Future
+     * @throws IOException
+     */
+    static Future<?> execute(HttpClientKey key, HttpRequestBase request, FutureCallback<HttpResponse> callback) throws IOException {
+        return execute(key, request, 0, 0, callback);
+    }
+
+    /**
+     * 以 HTTP/2 执行请求, 响应头或响应内容超出最大字节数时以异常结束, 不再缓冲之后收到的内容
+     *
+     * @param key           客户端配置
+     * @param request       HTTP 请求
+     * @param maxHeaderSize 响应头的最大字节数, 为0时不限制
+     * @param maxBodySize   响应内容的最大字节数, 为0时不限制
+     * @param callback      请求结果的回调, 在 I/O 线程上执行
+     * @return 可以用于取消请求的 Future, 超出限制后应取消以重置该流
+     * @throws IOException
+     */
+    static Future<?> execute(HttpClientKey key, HttpRequestBase request, int maxHeaderSize, long maxBodySize,
+                             FutureCallback<HttpResponse> callback) throws IOException {
+        CloseableHttpAsyncClient client = CLIENTS.computeIfAbsent(key, Http2Transport::createClient);
+        AsyncResponseConsumer<SimpleHttpResponse> consumer = SimpleResponseConsumer.create();
+        if (maxHeaderSize > 0 || maxBodySize > 0) {
+            consumer = new LimitedResponseConsumer(consumer, maxHeaderSize, maxBodySize);
+        }
+        StreamLimiter limiter = LIMITERS.computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(URIUtils.extractHost(request.getURI()).toURI(), host -> new StreamLimiter());
+        Exchange exchange = new Exchange(client, target(request), toRequest(request), consumer, limiter, callback);
+        // 超出并发流数量时排队, 由先前的流结束时在 I/O 线程上发起
+        limiter.submit(exchange);
+        return exchange;
+    }
+
+    /**
+     * 设置 HTTP/2 连接参数; 客户端发起的并发流数量由客户端排队限制, 立即生效, 流量控制窗口只作用于之后创建的客户端
+     *
+     * @param maxConcurrentStreams 每个连接上客户端发起的最大并发流数量
+     * @param initialWindowSize    每个流的初始流量控制窗口大小
+     */
+    static void setConfig(int maxConcurrentStreams, int initialWindowSize) {
+        Http2Transport.maxConcurrentStreams = maxConcurrentStreams;
+        Http2Transport.initialWindowSize = initialWindowSize;
+    }
+
+    /**
+     * 关闭并移除所有客户端
+     */
+    static void shutdown() {
+        LIMITERS.clear();
+        for (HttpClientKey key : CLIENTS.keySet()) {
+            CloseableHttpAsyncClient client = CLIENTS.remove(key);
+            if (client != null) {
+                client.close(CloseMode.GRACEFUL);
+            }
+        }
+    }
+
+    /**
+     * 构建 HTTP/2 客户端对象, 设置了代理或自定义的 SSL 连接工厂的请求在选择传输协议时已退回 HTTP/1.1
+     *
+     * @param key 客户端配置
+     * @return CloseableHttpAsyncClient
+     */
+    private static CloseableHttpAsyncClient createClient(HttpClientKey key) {
+        CloseableHttpAsyncClient client = H2AsyncClientBuilder.create()
+                .setH2Config(H2Config.custom()
+                        .setPushEnabled(false)
+                        .setMaxConcurrentStreams(maxConcurrentStreams)
+                        .setInitialWindowSize(initialWindowSize)
+                        .build())
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setSoTimeout(Timeout.ofMilliseconds(key.readTimeout))
+                        .build())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(key.connectTimeout, TimeUnit.MILLISECONDS)
+                        .setSocketTimeout(key.readTimeout, TimeUnit.MILLISECONDS)
+                        .build())
+                .setTlsStrategy(ClientTlsStrategyBuilder.create()
+                        .setSslContext(key.sslContext)
+                        .build())
+                .disableCookieManagement()
+                .build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * 请求设置了 Host 请求头时, 连接仍发往请求地址中的主机, Host 请求头的值作为 :authority 发送
+     *
+     * @param request httpclient 4 的请求
+     * @return 连接的目标主机, 没有设置 Host 请求头时为 null, 由请求地址决定
+     */
+    private static org.apache.hc.core5.http.HttpHost target(HttpRequestBase request) {
+        if (request.getFirstHeader(HttpHeaders.HOST) == null) {
+            return null;
+        }
+        URI uri = request.getURI();
+        return new org.apache.hc.core5.http.HttpHost(uri.getScheme(), uri.getHost(), uri.getPort());
+    }
+
+    /**
+     * 转换请求, 请求内容以流的方式发送, 不整个缓冲在内存中; Host 请求头转换为 :authority
+     *
+     * @param request httpclient 4 的请求
+     * @return httpclient5 的请求生产者
+     */
+    private static AsyncRequestProducer toRequest(HttpRequestBase request) {
+        BasicHttpRequest target = new BasicHttpRequest(request.getMethod(), request.getURI());
+        Header host = request.getFirstHeader(HttpHeaders.HOST);
+        if (host != null) {
+            HttpHost authority = HttpHost.create(host.getValue());
+            target.setAuthority(new URIAuthority(authority.getHostName(), authority.getPort()));
+        }
+        for (Header header : request.getAllHeaders()) {
+            if (!EXCLUDED_HEADERS.contains(header.getName().toLowerCase())) {
+                target.addHeader(header.getName(), header.getValue());
+            }
+        }
+        HttpEntity entity = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        }
+        // Content-Type 和 Content-Encoding 由 httpclient5 按实体的信息添加
+        return new BasicRequestProducer(target, entity != null ? new EntityProducer(entity) : null);
+    }
+
+    /**
+     * 转换响应
+     *
+     * @param response httpclient5 的响应
+     * @return httpclient 4 的响应
+     */
+    private static HttpResponse toResponse(SimpleHttpResponse response) {
+        BasicHttpResponse target = new BasicHttpResponse(
+                new BasicStatusLine(HTTP_2, response.getCode(), response.getReasonPhrase()));
+        for (org.apache.hc.core5.http.Header header : response.getHeaders()) {
+            target.addHeader(header.getName(), header.getValue());
+        }
+        byte[] body = response.getBodyBytes();
+        if (body != null) {
+            ByteArrayEntity entity = new ByteArrayEntity(body);
+            if (response.getContentType() != null) {
+                entity.setContentType(response.getContentType().toString());
+            }
+            target.setEntity(entity);
+        }
+        return target;
+    }
+
+    /**
+     * 限制响应大小的响应消费者, 包装实际的消费者; 超出限制时以异常结束请求, 之后收到的内容直接丢弃且不再扩大流量控制窗口,
+     * 请求方随后取消请求以重置该流
+     */
+    private static final class LimitedResponseConsumer implements AsyncResponseConsumer<SimpleHttpResponse> {
+
+        /**
+         * 实际的消费者
+         */
+        private final AsyncResponseConsumer<SimpleHttpResponse> delegate;
+
+        /**
+         * 响应头的最大字节数, 为0时不限制
+         */
+        private final int maxHeaderSize;
+
+        /**
+         * 响应内容的最大字节数, 为0时不限制
+         */
+        private final long maxBodySize;
+
+        /**
+         * 请求结果的回调
+         */
+        private org.apache.hc.core5.concurrent.FutureCallback<SimpleHttpResponse> resultCallback;
+
+        /**
+         * 已收到的响应内容的字节数
+         */
+        private long received;
+
+        /**
+         * 是否已超出限制
+         */
+        private boolean exceeded;
+
+        LimitedResponseConsumer(AsyncResponseConsumer<SimpleHttpResponse> delegate, int maxHeaderSize, long maxBodySize) {
+            this.delegate = delegate;
+            this.maxHeaderSize = maxHeaderSize;
+            this.maxBodySize = maxBodySize;
+        }
+
+        @Override
+        public void consumeResponse(org.apache.hc.core5.http.HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                                    org.apache.hc.core5.concurrent.FutureCallback<SimpleHttpResponse> resultCallback)
+                throws HttpException, IOException {
+            this.resultCallback = resultCallback;
+            if (maxHeaderSize > 0) {
+                // 按 HTTP/1.1 的格式计算: 状态行和每行 "名称: 值\r\n"
+                long size = 15 + (response.getReasonPhrase() != null ? response.getReasonPhrase().length() : 0);
+                for (org.apache.hc.core5.http.Header header : response.getHeaders()) {
+                    size += header.getName().length() + header.getValue().length() + 4;
+                }
+                if (size > maxHeaderSize) {
+                    exceed(new ResponseHeaderTooLargeException(maxHeaderSize));
+                    return;
+                }
+            }
+            if (maxBodySize > 0 && entityDetails != null && entityDetails.getContentLength() > maxBodySize) {
+                exceed(new ResponseTooLargeException(maxBodySize, entityDetails.getContentLength()));
+                return;
+            }
+            delegate.consumeResponse(response, entityDetails, context, resultCallback);
+        }
+
+        @Override
+        public void informationResponse(org.apache.hc.core5.http.HttpResponse response, HttpContext context)
+                throws HttpException, IOException {
+            delegate.informationResponse(response, context);
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            if (!exceeded) {
+                delegate.updateCapacity(capacityChannel);
+            }
+        }
+
+        @Override
+        public void consume(ByteBuffer src) throws IOException {
+            if (!exceeded) {
+                received += src.remaining();
+                if (maxBodySize > 0 && received > maxBodySize) {
+                    exceed(new ResponseTooLargeException(maxBodySize, received));
+                } else {
+                    delegate.consume(src);
+                }
+            }
+            // 超出限制后丢弃
+            src.position(src.limit());
+        }
+
+        @Override
+        public void streamEnd(List<? extends org.apache.hc.core5.http.Header> trailers) throws HttpException, IOException {
+            if (!exceeded) {
+                delegate.streamEnd(trailers);
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            delegate.failed(cause);
+        }
+
+        @Override
+        public void releaseResources() {
+            delegate.releaseResources();
+        }
+
+        /**
+         * 超出限制, 以异常结束请求
+         *
+         * @param e 异常
+         */
+        private void exceed(RuntimeException e) {
+            exceeded = true;
+            resultCallback.failed(e);
+        }
+
+    }
+
+    /**
+     * 同一主机的并发流的限制器, 达到最大并发流数量后新的请求排队, 先前的流结束时依次发起
+     */
+    private static final class StreamLimiter {
+
+        /**
+         * 排队的请求
+         */
+        private final Queue<Exchange> pending = new ArrayDeque<>();
+
+        /**
+         * 进行中的流数量
+         */
+        private int active;
+
+        /**
+         * 提交请求, 未达到最大并发流数量时立即发起
+         *
+         * @param exchange 请求
+         */
+        void submit(Exchange exchange) {
+            synchronized (this) {
+                if (active >= maxConcurrentStreams) {
+                    pending.add(exchange);
+                    return;
+                }
+                active++;
+            }
+            exchange.start();
+        }
+
+        /**
+         * 移除排队的请求
+         *
+         * @param exchange 请求
+         * @return 仍在排队时返回 true
+         */
+        synchronized boolean remove(Exchange exchange) {
+            return pending.remove(exchange);
+        }
+
+        /**
+         * 一个流结束, 有排队的请求时发起下一个
+         */
+        void release() {
+            Exchange next;
+            synchronized (this) {
+                next = pending.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            next.start();
+        }
+
+    }
+
+    /**
+     * 以流的方式发送请求内容的生产者, 在 I/O 线程上读取实体内容, 按流量控制窗口边读边发;
+     * 窗口已满时暂停, 窗口扩大后继续
+     */
+    private static final class EntityProducer implements AsyncEntityProducer {
+
+        /**
+         * 请求实体
+         */
+        private final HttpEntity entity;
+
+        /**
+         * 已读取尚未发出的内容
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        /**
+         * 实体的内容输入流, 发送完或释放后为 null
+         */
+        private InputStream content;
+
+        /**
+         * 是否已读到内容的末尾
+         */
+        private boolean eof;
+
+        EntityProducer(HttpEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return entity.isRepeatable();
+        }
+
+        @Override
+        public long getContentLength() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return entity.getContentType() != null ? entity.getContentType().getValue() : null;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return entity.getContentEncoding() != null ? entity.getContentEncoding().getValue() : null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return entity.getContentLength() < 0;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            return eof && buffer.position() == 0 ? 0 : buffer.capacity();
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            if (content == null) {
+                // 首次发送或重试时重新打开内容
+                content = entity.getContent();
+                buffer.clear();
+                eof = false;
+            }
+            while (true) {
+                if (!eof && buffer.hasRemaining()) {
+                    int n = content.read(buffer.array(), buffer.position(), buffer.remaining());
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        buffer.position(buffer.position() + n);
+                    }
+                }
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                boolean drained = !buffer.hasRemaining();
+                buffer.compact();
+                if (eof && drained) {
+                    channel.endStream();
+                    releaseResources();
+                    return;
+                }
+                if (!drained) {
+                    // 流量控制窗口已满
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void failed(Exception e) {
+            releaseResources();
+        }
+
+        @Override
+        public void releaseResources() {
+            if (content != null) {
+                try {
+                    content.close();
+                } catch (IOException e) {
+                    // 忽略
+                }
+                content = null;
+            }
+        }
+
+    }
+
+    /**
+     * 受并发流限制的一次请求, 返回给调用方用于取消请求; 排队时取消直接移出队列, 发起后取消即重置该流
+     */
+    private static final class Exchange implements Future<Void> {
+
+        private final CloseableHttpAsyncClient client;
+
+        /**
+         * 连接的目标主机, 为 null 时由请求地址决定
+         */
+        private final org.apache.hc.core5.http.HttpHost target;
+
+        private final AsyncRequestProducer producer;
+
+        private final AsyncResponseConsumer<SimpleHttpResponse> consumer;
+
+        private final StreamLimiter limiter;
+
+        private final FutureCallback<HttpResponse> callback;
+
+        /**
+         * 请求结束 ( 完成、失败或取消 )
+         */
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        /**
+         * 是否已归还并发流的名额
+         */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * 发起后的请求
+         */
+        private volatile Future<?> future;
+
+        /**
+         * 是否已取消
+         */
+        private volatile boolean cancelled;
+
+        Exchange(CloseableHttpAsyncClient client, org.apache.hc.core5.http.HttpHost target, AsyncRequestProducer producer,
+                 AsyncResponseConsumer<SimpleHttpResponse> consumer, StreamLimiter limiter, FutureCallback<HttpResponse> callback) {
+            this.client = client;
+            this.target = target;
+            this.producer = producer;
+            this.consumer = consumer;
+            this.limiter = limiter;
+            this.callback = callback;
+        }
+
+        /**
+         * 发起请求, 此时已占用一个并发流的名额
+         */
+        void start() {
+            if (cancelled) {
+                // 已出队但还没有发起时被取消, cancel 没能移出队列, 由这里结束请求
+                release();
+                if (done.cancel(false)) {
+                    callback.cancelled();
+                }
+                return;
+            }
+            try {
+                future = client.execute(target, producer, consumer, null, null, new org.apache.hc.core5.concurrent.FutureCallback<SimpleHttpResponse>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        release();
+                        done.complete(null);
+                        callback.completed(toResponse(response));
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        release();
+                        done.completeExceptionally(e);
+                        callback.failed(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        release();
+                        done.cancel(false);
+                        callback.cancelled();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // 客户端已关闭等
+                release();
+                done.completeExceptionally(e);
+                callback.failed(e);
+                return;
+            }
+            if (cancelled) {
+                // 发起期间被取消
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * 归还并发流的名额, 只归还一次
+         */
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done.isDone()) {
+                return false;
+            }
+            cancelled = true;
+            if (limiter.remove(this)) {
+                // 仍在排队, 没有占用名额
+                done.cancel(false);
+                callback.cancelled();
+                return true;
+            }
+            Future<?> started = future;
+            return started == null || started.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return done.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.isDone();
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            return done.get();
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return done.get(timeout, unit);
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package org.fanlychie.commons.httpclient;
+
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 批量请求, 以有界的并发执行一批已构建好的请求. 请求按需从集合或流中取出, 同时进行的请求不超过并发数,
+ * 流中的请求不会一次全部创建; 相同配置的请求共享同一个客户端和连接池, 连接池的连接数不足时按并发数调大.
+ * 单个请求失败不会中断整批请求, 异常保存在对应的 {@link BatchResult} 中.
+ * 传输协议为 HTTP/2 的请求以异步方式在同一个连接上多路复用, 不占用线程; HTTP/1.1 的请求在虚拟线程上执行,
+ * 复用连接池中的长连接 ( HttpClient 不支持 HTTP/1.1 管线化 )
+ * <pre>
+ * List&lt;BatchResult&lt;HttpResult&gt;&gt; results = HttpClientUtils.batch(
+ *         ids.stream().map(id -&gt; HttpClientUtils.get(url).addParameter("id", id)))
+ *         .setParallelism(64)
+ *         .execute();
+ * </pre>
+ */
+public class HttpBatch {
+
+    /**
+     * 待执行的请求
+     */
+    private final Iterator<? extends HttpClientRequest> requests;
+
+    /**
+     * 最大并发数, 默认64
+     */
+    private int parallelism = 64;
+
+    /**
+     * 批量请求是否已执行
+     */
+    private boolean executed;
+
+    /**
+     * 创建批量请求
+     *
+     * @param requests 请求集合
+     */
+    public HttpBatch(Collection<? extends HttpClientRequest> requests) {
+        this.requests = requests.iterator();
+    }
+
+    /**
+     * 创建批量请求, 请求在执行时按需从流中取出
+     *
+     * @param requests 请求流
+     */
+    public HttpBatch(Stream<? extends HttpClientRequest> requests) {
+        this.requests = requests.iterator();
+    }
+
+    /**
+     * 设置最大并发数, 同时也是连接池中每个路由至少可用的连接数
+     *
+     * @param parallelism 最大并发数
+     * @return HttpBatch
+     */
+    public HttpBatch setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 执行全部请求, 等待全部完成后按请求的顺序返回结果
+     *
+     * @return 按请求顺序排列的结果
+     */
+    public List<BatchResult<HttpResult>> execute() {
+        List<BatchResult<HttpResult>> results = new ArrayList<>();
+        executeAsCompleted(results::add);
+        results.sort(Comparator.comparingInt(BatchResult::getIndex));
+        return results;
+    }
+
+    /**
+     * 执行全部请求, 由调用方决定如何执行单个请求 ( 如 request -&gt; request.execute(User.class) ),
+     * 等待全部完成后按请求的顺序返回结果
+     *
+     * @param action 执行单个请求
+     * @param <T>    请求结果的类型
+     * @return 按请求顺序排列的结果
+     */
+    public <T> List<BatchResult<T>> execute(Function<? super HttpClientRequest, T> action) {
+        List<BatchResult<T>> results = new ArrayList<>();
+        executeAsCompleted(action, results::add);
+        results.sort(Comparator.comparingInt(BatchResult::getIndex));
+        return results;
+    }
+
+    /**
+     * 执行全部请求, 每个请求完成后立即回调, 回调的顺序为完成的顺序. 回调在调用者线程上进行, 不需要同步;
+     * 全部请求完成后返回
+     *
+     * @param consumer 单个请求的结果
+     */
+    public void executeAsCompleted(Consumer<BatchResult<HttpResult>> consumer) {
+        run(request -> request.getTransport() == HttpTransport.HTTP_2
+                ? request.executeAsync() : HttpClientExecutor.submit(request::execute), consumer);
+    }
+
+    /**
+     * 执行全部请求, 由调用方决定如何执行单个请求, 每个请求完成后立即在调用者线程上回调
+     *
+     * @param action   执行单个请求
+     * @param consumer 单个请求的结果
+     * @param <T>      请求结果的类型
+     */
+    public <T> void executeAsCompleted(Function<? super HttpClientRequest, T> action, Consumer<BatchResult<T>> consumer) {
+        run(request -> HttpClientExecutor.submit(() -> action.apply(request)), consumer);
+    }
+
+    /**
+     * 以有界的并发执行全部请求
+     *
+     * @param submitter 提交单个请求
+     * @param consumer  单个请求的结果
+     * @param <T>       请求结果的类型
+     */
+    private synchronized <T> void run(Function<HttpClientRequest, CompletableFuture<T>> submitter,
+                                      Consumer<BatchResult<T>> consumer) {
+        if (executed) {
+            throw new IllegalStateException("batch already executed");
+        }
+        executed = true;
+        HttpClientPool.ensureCapacity(parallelism);
+        BlockingQueue<BatchResult<T>> completed = new LinkedBlockingQueue<>();
+        int submitted = 0;
+        int delivered = 0;
+        try {
+            while (requests.hasNext()) {
+                // 并发数已满时等待一个请求完成
+                if (submitted - delivered >= parallelism) {
+                    consumer.accept(completed.take());
+                    delivered++;
+                }
+                HttpClientRequest request = requests.next();
+                int index = submitted++;
+                CompletableFuture<T> future;
+                try {
+                    future = submitter.apply(request);
+                } catch (RuntimeException e) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                }
+                future.whenComplete((result, e) -> completed.add(new BatchResult<>(index, request, result, unwrap(e))));
+                // 顺便回调已完成的请求
+                BatchResult<T> item;
+                while ((item = completed.poll()) != null) {
+                    consumer.accept(item);
+                    delivered++;
+                }
+            }
+            while (delivered < submitted) {
+                consumer.accept(completed.take());
+                delivered++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 取出实际的异常
+     *
+     * @param e 异常
+     * @return 实际的异常
+     */
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof RuntimeCastException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.client.cache.CacheResponseStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP 响应缓存的统计计数
+ */
+public class HttpCacheStatistics {
+
+    /**
+     * 直接由缓存返回的次数
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * 缓存未命中, 由服务器返回的次数
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 通过条件请求 ( If-None-Match / If-Modified-Since ) 重新验证后由缓存返回的次数
+     */
+    private final LongAdder validations = new LongAdder();
+
+    /**
+     * 由缓存模块直接生成响应 ( 如请求不满足缓存条件时的 504 ) 的次数
+     */
+    private final LongAdder moduleResponses = new LongAdder();
+
+    /**
+     * 记录一次缓存请求的结果
+     *
+     * @param status 缓存响应状态
+     */
+    void record(CacheResponseStatus status) {
+        if (status == null) {
+            return;
+        }
+        switch (status) {
+            case CACHE_HIT:
+                hits.increment();
+                break;
+            case CACHE_MISS:
+                misses.increment();
+                break;
+            case VALIDATED:
+                validations.increment();
+                break;
+            default:
+                moduleResponses.increment();
+                break;
+        }
+    }
+
+    /**
+     * 直接由缓存返回的次数
+     *
+     * @return 次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 缓存未命中, 由服务器返回的次数
+     *
+     * @return 次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 重新验证后由缓存返回的次数
+     *
+     * @return 次数
+     */
+    public long getValidations() {
+        return validations.sum();
+    }
+
+    /**
+     * 由缓存模块直接生成响应的次数
+     *
+     * @return 次数
+     */
+    public long getModuleResponses() {
+        return moduleResponses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + getHits() + ", misses: " + getMisses()
+                + ", validations: " + getValidations() + ", moduleResponses: " + getModuleResponses();
+    }
+
+}
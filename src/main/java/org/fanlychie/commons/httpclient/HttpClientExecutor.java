@@ -0,0 +1,164 @@
+package org.fanlychie.commons.httpclient;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 请求执行器, 每个请求分派到一个虚拟线程 ( JDK 21+ ) 上阻塞执行, 并由并发限制器限制同时进行的请求数量;
+ * 运行在不支持虚拟线程的 JDK 上时退化为守护线程的缓存线程池, 线程数不超过最大并发请求数
+ */
+final class HttpClientExecutor {
+
+    /**
+     * 执行请求的线程池
+     */
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    /**
+     * 并发限制器, 默认最多1000个并发请求
+     */
+    private static volatile Limiter limiter = new Limiter(1000);
+
+    /**
+     * 私有化
+     */
+    private HttpClientExecutor() {
+
+    }
+
+    /**
+     * 在虚拟线程上执行任务; 超过最大并发数时任务在队列中等待, 取得许可后才分派到线程上,
+     * 退化为平台线程池时排队的任务也不占用线程
+     *
+     * @param task 任务
+     * @param <T>  任务结果的类型
+     * @return 任务结果
+     */
+    static <T> CompletableFuture<T> submit(Supplier<T> task) {
+        Limiter permits = limiter;
+        CompletableFuture<T> future = new CompletableFuture<>();
+        permits.submit(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 直接在执行器上执行任务, 不经过并发限制器; 用于已占用许可的请求内部派生的子请求 ( 如对冲请求 ),
+     * 子请求再排队等待许可时, 许可全部被等待子请求的外层任务占用, 会永久阻塞
+     *
+     * @param task 任务
+     * @param <T>  任务结果的类型
+     * @return 任务结果
+     */
+    static <T> CompletableFuture<T> fork(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 设置最大并发请求数, 连接池的总连接数和每个路由的连接数不足时一并调大, 使并发的请求不必排队等待连接;
+     * 已提交的请求仍受原来的限制
+     *
+     * @param maxConcurrency 最大并发请求数
+     */
+    static void setMaxConcurrency(int maxConcurrency) {
+        HttpClientExecutor.limiter = new Limiter(maxConcurrency);
+        HttpClientPool.ensureCapacity(maxConcurrency);
+    }
+
+    /**
+     * 创建执行请求的线程池, 优先使用虚拟线程
+     *
+     * @return ExecutorService
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "http-client-executor-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 并发限制器, 任务先进入队列, 取得许可后分派到线程池执行, 执行完归还许可并分派下一个排队的任务
+     */
+    private static final class Limiter {
+
+        /**
+         * 许可
+         */
+        private final Semaphore permits;
+
+        /**
+         * 等待许可的任务
+         */
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        Limiter(int maxConcurrency) {
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        /**
+         * 提交任务
+         *
+         * @param task 任务
+         */
+        void submit(Runnable task) {
+            pending.add(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                    dispatch();
+                }
+            });
+            dispatch();
+        }
+
+        /**
+         * 有排队的任务且有空闲的许可时分派任务; 入队和归还许可后都会调用, 不会遗漏排队的任务
+         */
+        private void dispatch() {
+            while (!pending.isEmpty() && permits.tryAcquire()) {
+                Runnable task = pending.poll();
+                if (task == null) {
+                    // 已被其他线程取走
+                    permits.release();
+                    continue;
+                }
+                try {
+                    EXECUTOR.execute(task);
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+        }
+
+    }
+
+}
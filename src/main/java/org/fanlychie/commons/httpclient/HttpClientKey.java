@@ -0,0 +1,105 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+
+import javax.net.ssl.SSLContext;
+import java.util.Objects;
+
+/**
+ * 共享 HTTP 客户端的键, 由所有会改变客户端行为的配置组成, 配置相同的请求共用同一个客户端及其连接池
+ */
+final class HttpClientKey {
+
+    /**
+     * 代理主机
+     */
+    final String proxyHost;
+
+    /**
+     * 代理端口
+     */
+    final int proxyPort;
+
+    /**
+     * 代理模式 ( http 或 https )
+     */
+    final String proxySchema;
+
+    /**
+     * SSL 连接工厂, 按对象标识比较, 为 null 时使用默认的工厂
+     */
+    final LayeredConnectionSocketFactory sslSocketFactory;
+
+    /**
+     * SSL 上下文, 按对象标识比较, 没有设置 SSL 连接工厂时使用
+     */
+    final SSLContext sslContext;
+
+    /**
+     * 失败重试的次数
+     */
+    final int retryTimes;
+
+    /**
+     * 读取超时时间
+     */
+    final int readTimeout;
+
+    /**
+     * 连接超时时间
+     */
+    final int connectTimeout;
+
+    /**
+     * 是否启用响应缓存
+     */
+    final boolean cacheEnabled;
+
+    /**
+     * 明文连接是否使用由套接字通道支持的套接字, 被中断时连接随之关闭
+     */
+    final boolean socketChannel;
+
+    HttpClientKey(String proxyHost, int proxyPort, String proxySchema,
+                  LayeredConnectionSocketFactory sslSocketFactory, SSLContext sslContext,
+                  int retryTimes, int readTimeout, int connectTimeout, boolean cacheEnabled, boolean socketChannel) {
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+        this.proxySchema = proxySchema;
+        this.sslSocketFactory = sslSocketFactory;
+        this.sslContext = sslContext;
+        this.retryTimes = retryTimes;
+        this.readTimeout = readTimeout;
+        this.connectTimeout = connectTimeout;
+        this.cacheEnabled = cacheEnabled;
+        this.socketChannel = socketChannel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HttpClientKey)) {
+            return false;
+        }
+        HttpClientKey that = (HttpClientKey) o;
+        return proxyPort == that.proxyPort
+                && retryTimes == that.retryTimes
+                && readTimeout == that.readTimeout
+                && connectTimeout == that.connectTimeout
+                && cacheEnabled == that.cacheEnabled
+                && socketChannel == that.socketChannel
+                && sslSocketFactory == that.sslSocketFactory
+                && sslContext == that.sslContext
+                && Objects.equals(proxyHost, that.proxyHost)
+                && Objects.equals(proxySchema, that.proxySchema);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(proxyHost, proxyPort, proxySchema,
+                System.identityHashCode(sslSocketFactory), System.identityHashCode(sslContext), retryTimes, readTimeout, connectTimeout, cacheEnabled, socketChannel);
+    }
+
+}
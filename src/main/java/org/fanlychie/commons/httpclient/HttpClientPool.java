@@ -0,0 +1,746 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
+import org.apache.http.impl.client.cache.BasicHttpCacheStorage;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.cache.FileResourceFactory;
+import org.apache.http.impl.client.cache.HeapResourceFactory;
+import org.apache.http.impl.client.cache.ManagedHttpCacheStorage;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 共享的 HTTP 客户端注册表, 相同配置的请求复用同一个客户端和连接池, 使 keep-alive 连接可以跨请求复用
+ */
+final class HttpClientPool {
+
+    /**
+     * 已创建的客户端
+     */
+    private static final ConcurrentMap<HttpClientKey, PooledClient> CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * 已创建的异步客户端
+     */
+    private static final ConcurrentMap<HttpClientKey, PooledAsyncClient> ASYNC_CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * 日志
+     */
+    private static final Log log = LogFactory.getLog(HttpClientPool.class);
+
+    /**
+     * 检查空闲客户端的时间间隔, 单位纳秒
+     */
+    private static final long IDLE_CHECK_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * 下次检查空闲客户端的时间, 单位纳秒
+     */
+    private static final AtomicLong nextIdleCheck = new AtomicLong(System.nanoTime() + IDLE_CHECK_INTERVAL);
+
+    /**
+     * 每个连接池的最大连接数, 默认200
+     */
+    private static volatile int maxTotal = 200;
+
+    /**
+     * 每个路由的最大连接数, 默认20
+     */
+    private static volatile int maxPerRoute = 20;
+
+    /**
+     * DNS 解析器, 默认缓存解析结果60秒
+     */
+    private static volatile DnsResolver dnsResolver = new CachingDnsResolver();
+
+    /**
+     * 全局的请求监听器
+     */
+    private static final List<RequestListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 全局默认的传输协议, 默认 HTTP/1.1
+     */
+    private static volatile HttpTransport defaultTransport = HttpTransport.HTTP_1_1;
+
+    /**
+     * 全局默认的失败重试策略, 默认没有
+     */
+    private static volatile RetryPolicy defaultRetryPolicy;
+
+    /**
+     * 全局默认的熔断器, 默认没有
+     */
+    private static volatile CircuitBreaker defaultCircuitBreaker;
+
+    /**
+     * 全局默认的自适应并发限制器, 默认没有
+     */
+    private static volatile AdaptiveConcurrencyLimiter defaultConcurrencyLimiter;
+
+    /**
+     * 空闲连接的最大存活时间, 默认60秒
+     */
+    private static volatile long maxIdleTime = 60 * 1000;
+
+    /**
+     * 响应缓存的配置
+     */
+    private static volatile CacheConfig cacheConfig = CacheConfig.custom()
+            .setMaxCacheEntries(1000)
+            .setMaxObjectSize(1024 * 1024)
+            .setSharedCache(false)
+            .build();
+
+    /**
+     * 响应缓存的存储, 所有启用缓存的客户端共用
+     */
+    private static volatile HttpCacheStorage cacheStorage = new BasicHttpCacheStorage(cacheConfig);
+
+    /**
+     * 响应缓存内容的存放方式
+     */
+    private static volatile ResourceFactory cacheResourceFactory = new HeapResourceFactory();
+
+    /**
+     * 响应缓存的统计计数
+     */
+    private static final HttpCacheStatistics CACHE_STATISTICS = new HttpCacheStatistics();
+
+    /**
+     * 私有化
+     */
+    private HttpClientPool() {
+
+    }
+
+    /**
+     * 获取与配置对应的客户端, 不存在时创建
+     *
+     * @param key 客户端配置
+     * @return CloseableHttpClient
+     */
+    static CloseableHttpClient getClient(HttpClientKey key) {
+        return acquireClient(key).client;
+    }
+
+    /**
+     * 获取与配置对应的异步客户端, 不存在时创建并启动
+     *
+     * @param key 客户端配置
+     * @return CloseableHttpAsyncClient
+     */
+    static CloseableHttpAsyncClient getAsyncClient(HttpClientKey key) {
+        long now = System.nanoTime();
+        PooledAsyncClient pooled = ASYNC_CLIENTS.compute(key, (k, v) -> {
+            v = v != null ? v : createAsyncClient(k);
+            v.lastUsed = now;
+            return v;
+        });
+        closeIdleClients(now);
+        return pooled.client;
+    }
+
+    /**
+     * 获取与配置对应的客户端及其连接池, 不存在时创建; 在同一个原子操作中记录使用时间, 不会与关闭空闲客户端交错
+     *
+     * @param key 客户端配置
+     * @return PooledClient
+     */
+    private static PooledClient acquireClient(HttpClientKey key) {
+        long now = System.nanoTime();
+        PooledClient pooled = CLIENTS.compute(key, (k, v) -> {
+            v = v != null ? v : createClient(k);
+            v.lastUsed = now;
+            return v;
+        });
+        closeIdleClients(now);
+        return pooled;
+    }
+
+    /**
+     * 关闭并移除长时间没有使用且没有租出连接的客户端, 每分钟最多检查一次. 每个不同的 SSL 连接工厂或 SSL 上下文
+     * 都对应一个客户端, 按请求创建它们时不清理的话客户端及其连接池和清理线程会不断累积
+     *
+     * @param now 当前时间, 单位纳秒
+     */
+    private static void closeIdleClients(long now) {
+        long next = nextIdleCheck.get();
+        if (now - next < 0 || !nextIdleCheck.compareAndSet(next, now + IDLE_CHECK_INTERVAL)) {
+            return;
+        }
+        // 空闲超过连接的最大存活时间后连接池中已没有可复用的连接, 关闭客户端不会损失什么
+        long idleTime = Math.max(TimeUnit.MILLISECONDS.toNanos(maxIdleTime), IDLE_CHECK_INTERVAL);
+        List<Closeable> closing = new ArrayList<>();
+        for (HttpClientKey key : CLIENTS.keySet()) {
+            CLIENTS.computeIfPresent(key, (k, v) -> {
+                PoolStats stats = v.manager.getTotalStats();
+                if (now - v.lastUsed > idleTime && stats.getLeased() == 0 && stats.getPending() == 0) {
+                    closing.add(v.client);
+                    return null;
+                }
+                return v;
+            });
+        }
+        for (HttpClientKey key : ASYNC_CLIENTS.keySet()) {
+            ASYNC_CLIENTS.computeIfPresent(key, (k, v) -> {
+                PoolStats stats = v.manager.getTotalStats();
+                if (now - v.lastUsed > idleTime && stats.getLeased() == 0 && stats.getPending() == 0) {
+                    closing.add(v.client);
+                    return null;
+                }
+                return v;
+            });
+        }
+        for (Closeable client : closing) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.warn("close idle http client failed", e);
+            }
+        }
+    }
+
+    /**
+     * 设置每个连接池的最大连接数, 同时作用于已创建的连接池
+     *
+     * @param maxTotal 最大连接数
+     */
+    static void setMaxTotal(int maxTotal) {
+        HttpClientPool.maxTotal = maxTotal;
+        CLIENTS.values().forEach(pooled -> pooled.manager.setMaxTotal(maxTotal));
+        ASYNC_CLIENTS.values().forEach(pooled -> pooled.manager.setMaxTotal(maxTotal));
+    }
+
+    /**
+     * 设置每个路由的最大连接数, 同时作用于已创建的连接池
+     *
+     * @param maxPerRoute 每个路由的最大连接数
+     */
+    static void setMaxPerRoute(int maxPerRoute) {
+        HttpClientPool.maxPerRoute = maxPerRoute;
+        CLIENTS.values().forEach(pooled -> pooled.manager.setDefaultMaxPerRoute(maxPerRoute));
+        ASYNC_CLIENTS.values().forEach(pooled -> pooled.manager.setDefaultMaxPerRoute(maxPerRoute));
+    }
+
+    /**
+     * 确保连接池的总连接数和每个路由的连接数不小于给定的值
+     *
+     * @param capacity 连接数
+     */
+    static synchronized void ensureCapacity(int capacity) {
+        if (maxTotal < capacity) {
+            setMaxTotal(capacity);
+        }
+        if (maxPerRoute < capacity) {
+            setMaxPerRoute(capacity);
+        }
+    }
+
+    /**
+     * 设置空闲连接的最大存活时间, 只作用于之后创建的客户端; 超过该时间 ( 至少1分钟 ) 没有使用的客户端连同连接池一起关闭
+     *
+     * @param maxIdleTime 空闲时间, 单位毫秒
+     */
+    static void setMaxIdleTime(long maxIdleTime) {
+        HttpClientPool.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * 设置响应缓存, 已缓存的内容被丢弃; 已创建的使用缓存的客户端被关闭并移除, 下次请求时以新的缓存重新创建,
+     * 之后才关闭旧的缓存存储
+     *
+     * @param maxEntries    最大缓存条目数, 超出时按最近最少使用淘汰
+     * @param maxObjectSize 可缓存的单个响应内容的最大字节数
+     * @param directory     缓存内容的存放目录, 为 null 时存放在内存中
+     */
+    static synchronized void setCache(int maxEntries, long maxObjectSize, Path directory) {
+        CacheConfig config = CacheConfig.custom()
+                .setMaxCacheEntries(maxEntries)
+                .setMaxObjectSize(maxObjectSize)
+                .setSharedCache(false)
+                .build();
+        HttpCacheStorage previous = cacheStorage;
+        if (directory == null) {
+            cacheStorage = new BasicHttpCacheStorage(config);
+            cacheResourceFactory = new HeapResourceFactory();
+        } else {
+            cacheStorage = new ManagedHttpCacheStorage(config);
+            cacheResourceFactory = new FileResourceFactory(directory.toFile());
+        }
+        cacheConfig = config;
+        // 旧的客户端仍引用旧的缓存存储, 先关闭它们, 再关闭旧的缓存存储
+        for (HttpClientKey key : CLIENTS.keySet()) {
+            if (key.cacheEnabled) {
+                PooledClient pooled = CLIENTS.remove(key);
+                if (pooled != null) {
+                    try {
+                        pooled.client.close();
+                    } catch (IOException e) {
+                        throw new RuntimeCastException(e);
+                    }
+                }
+            }
+        }
+        if (previous instanceof ManagedHttpCacheStorage) {
+            ((ManagedHttpCacheStorage) previous).shutdown();
+        }
+    }
+
+    /**
+     * 记录一次缓存请求的结果
+     *
+     * @param status 缓存响应状态
+     */
+    static void recordCacheResponse(CacheResponseStatus status) {
+        CACHE_STATISTICS.record(status);
+        HttpCacheStorage storage = cacheStorage;
+        if (storage instanceof ManagedHttpCacheStorage) {
+            // 删除已被淘汰的缓存条目对应的文件
+            ((ManagedHttpCacheStorage) storage).cleanResources();
+        }
+    }
+
+    /**
+     * 响应缓存的统计计数
+     *
+     * @return HttpCacheStatistics
+     */
+    static HttpCacheStatistics getCacheStatistics() {
+        return CACHE_STATISTICS;
+    }
+
+    /**
+     * 设置 DNS 解析器, 只作用于之后创建的客户端
+     *
+     * @param dnsResolver DNS 解析器, 为 null 时使用系统解析器
+     */
+    static void setDnsResolver(DnsResolver dnsResolver) {
+        HttpClientPool.dnsResolver = dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE;
+    }
+
+    /**
+     * 预先建立到目标主机的连接并放回连接池, https 连接同时完成 TLS 握手; 连接池中已有的空闲连接计入数量
+     *
+     * @param key         客户端配置
+     * @param target      目标主机
+     * @param connections 连接数, 不超过每个路由的最大连接数
+     * @return 新建立的连接数
+     * @throws Exception
+     */
+    static int warmUp(HttpClientKey key, HttpHost target, int connections) throws Exception {
+        PoolingHttpClientConnectionManager manager = acquireClient(key).manager;
+        boolean secure = "https".equalsIgnoreCase(target.getSchemeName());
+        if (target.getPort() < 0) {
+            target = new HttpHost(target.getHostName(), secure ? 443 : 80, target.getSchemeName());
+        }
+        HttpRoute route;
+        if (key.proxyHost != null) {
+            if (secure) {
+                // 经代理的 https 连接需要先建立隧道, 由第一个真实请求完成
+                return 0;
+            }
+            route = new HttpRoute(target, new HttpHost(key.proxyHost, key.proxyPort, key.proxySchema));
+        } else {
+            route = new HttpRoute(target, null, secure);
+        }
+        int count = Math.min(connections, manager.getMaxPerRoute(route));
+        List<HttpClientConnection> leased = new ArrayList<>(count);
+        int opened = 0;
+        HttpClientContext context = HttpClientContext.create();
+        try {
+            // 同时借出多个连接, 保证建立的是不同的连接
+            for (int i = 0; i < count; i++) {
+                HttpClientConnection connection = manager.requestConnection(route, null)
+                        .get(key.connectTimeout, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    manager.connect(connection, route, key.connectTimeout, context);
+                    manager.routeComplete(connection, route, context);
+                    opened++;
+                }
+            }
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                manager.releaseConnection(connection, null, maxIdleTime, TimeUnit.MILLISECONDS);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * 添加全局的请求监听器
+     *
+     * @param listener 请求监听器
+     */
+    static void addListener(RequestListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * 移除全局的请求监听器
+     *
+     * @param listener 请求监听器
+     */
+    static void removeListener(RequestListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * 全局的请求监听器
+     *
+     * @return 请求监听器, 不可修改
+     */
+    static List<RequestListener> getListeners() {
+        return LISTENERS;
+    }
+
+    /**
+     * 所有连接池 ( 包括异步客户端的连接池 ) 的连接统计之和
+     *
+     * @return 借出的、等待连接的、空闲的连接数和最大连接数
+     */
+    static PoolStats getPoolStats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (PooledClient pooled : CLIENTS.values()) {
+            PoolStats stats = pooled.manager.getTotalStats();
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+        for (PooledAsyncClient pooled : ASYNC_CLIENTS.values()) {
+            PoolStats stats = pooled.manager.getTotalStats();
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    /**
+     * 全局默认的传输协议
+     *
+     * @return HttpTransport
+     */
+    static HttpTransport getDefaultTransport() {
+        return defaultTransport;
+    }
+
+    /**
+     * 设置全局默认的传输协议
+     *
+     * @param transport 传输协议
+     */
+    static void setDefaultTransport(HttpTransport transport) {
+        defaultTransport = transport != null ? transport : HttpTransport.HTTP_1_1;
+    }
+
+    /**
+     * 全局默认的失败重试策略
+     *
+     * @return RetryPolicy, 没有设置时返回 null
+     */
+    static RetryPolicy getDefaultRetryPolicy() {
+        return defaultRetryPolicy;
+    }
+
+    /**
+     * 设置全局默认的失败重试策略
+     *
+     * @param retryPolicy 失败重试策略, 为 null 时取消
+     */
+    static void setDefaultRetryPolicy(RetryPolicy retryPolicy) {
+        defaultRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * 全局默认的熔断器
+     *
+     * @return CircuitBreaker, 没有设置时返回 null
+     */
+    static CircuitBreaker getDefaultCircuitBreaker() {
+        return defaultCircuitBreaker;
+    }
+
+    /**
+     * 设置全局默认的熔断器
+     *
+     * @param circuitBreaker 熔断器, 为 null 时取消
+     */
+    static void setDefaultCircuitBreaker(CircuitBreaker circuitBreaker) {
+        defaultCircuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 全局默认的自适应并发限制器
+     *
+     * @return AdaptiveConcurrencyLimiter, 没有设置时返回 null
+     */
+    static AdaptiveConcurrencyLimiter getDefaultConcurrencyLimiter() {
+        return defaultConcurrencyLimiter;
+    }
+
+    /**
+     * 设置全局默认的自适应并发限制器
+     *
+     * @param concurrencyLimiter 自适应并发限制器, 为 null 时取消
+     */
+    static void setDefaultConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        defaultConcurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * 关闭并移除所有客户端
+     */
+    static void shutdown() {
+        for (HttpClientKey key : CLIENTS.keySet()) {
+            PooledClient pooled = CLIENTS.remove(key);
+            if (pooled != null) {
+                try {
+                    pooled.client.close();
+                } catch (IOException e) {
+                    throw new RuntimeCastException(e);
+                }
+            }
+        }
+        for (HttpClientKey key : ASYNC_CLIENTS.keySet()) {
+            PooledAsyncClient pooled = ASYNC_CLIENTS.remove(key);
+            if (pooled != null) {
+                try {
+                    pooled.client.close();
+                } catch (IOException e) {
+                    throw new RuntimeCastException(e);
+                }
+            }
+        }
+        try {
+            Class.forName(Http2Transport.CLIENT_CLASS_NAME, false, HttpClientPool.class.getClassLoader());
+            Http2Transport.shutdown();
+        } catch (ClassNotFoundException e) {
+            // 没有引入 httpclient5
+        }
+    }
+
+    /**
+     * 构建 HTTP 客户端对象
+     *
+     * @param key 客户端配置
+     * @return PooledClient
+     */
+    private static PooledClient createClient(HttpClientKey key) {
+        LayeredConnectionSocketFactory sslSocketFactory = key.sslSocketFactory;
+        if (sslSocketFactory == null) {
+            sslSocketFactory = SSLContextCache.getSocketFactory(key.sslContext);
+        }
+        // 连接工厂和 DNS 解析器记录连接阶段的耗时
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", TimingSocketFactory.wrap(key.socketChannel
+                        ? ChannelSocketFactory.INSTANCE : PlainConnectionSocketFactory.getSocketFactory()))
+                .register("https", TimingSocketFactory.wrap(sslSocketFactory))
+                .build();
+        DnsResolver resolver = dnsResolver;
+        DnsResolver timingResolver = host -> {
+            long start = System.nanoTime();
+            try {
+                return resolver.resolve(host);
+            } finally {
+                RequestMetrics.recordDns(System.nanoTime() - start);
+            }
+        };
+        // 连接池, 响应头按请求设置的最大字节数边读边检查
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry,
+                new ManagedHttpClientConnectionFactory(null, LimitedResponseParserFactory.INSTANCE), timingResolver);
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        HttpClientBuilder builder = HttpClientBuilder.create();
+        if (key.cacheEnabled) {
+            builder = CachingHttpClientBuilder.create()
+                    .setCacheConfig(cacheConfig)
+                    .setHttpCacheStorage(cacheStorage)
+                    .setResourceFactory(cacheResourceFactory);
+        }
+        CloseableHttpClient client = builder
+                // 设置连接池
+                .setConnectionManager(manager)
+                // 设置请求配置
+                .setDefaultRequestConfig(buildRequestConfig(key))
+                // 设置响应内容的解压方式
+                .setContentDecoderRegistry(createContentDecoders())
+                // 设置失败重试
+                .setRetryHandler(new StandardHttpRequestRetryHandler(key.retryTimes, true))
+                // 清理过期和长时间空闲的连接
+                .evictExpiredConnections()
+                .evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS)
+                .build();
+        return new PooledClient(client, manager);
+    }
+
+    /**
+     * 构建基于 NIO 的异步 HTTP 客户端对象, 少量 I/O 线程即可承载大量进行中的请求; 设置了自定义 SSL 连接工厂的请求不使用异步客户端
+     *
+     * @param key 客户端配置
+     * @return PooledAsyncClient
+     */
+    private static PooledAsyncClient createAsyncClient(HttpClientKey key) {
+        try {
+            Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(key.sslContext))
+                    .build();
+            IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                    .setConnectTimeout(key.connectTimeout)
+                    .setSoTimeout(key.readTimeout)
+                    .build();
+            // 连接池
+            PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(reactorConfig), null, registry, dnsResolver);
+            manager.setMaxTotal(maxTotal);
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            CloseableHttpAsyncClient client = HttpAsyncClientBuilder.create()
+                    // 设置连接池
+                    .setConnectionManager(manager)
+                    // 设置请求配置
+                    .setDefaultRequestConfig(buildRequestConfig(key))
+                    .build();
+            client.start();
+            return new PooledAsyncClient(client, manager);
+        } catch (IOReactorException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 响应内容的解压方式, 类路径中存在 Brotli 解码器时同时支持 br
+     *
+     * @return 压缩方式与解压输入流工厂对照表
+     */
+    private static Map<String, InputStreamFactory> createContentDecoders() {
+        Map<String, InputStreamFactory> decoders = new HashMap<>();
+        decoders.put("gzip", GZIPInputStream::new);
+        // 与 httpclient 默认的解码器一致, x-gzip 等同于 gzip
+        decoders.put("x-gzip", GZIPInputStream::new);
+        decoders.put("deflate", DeflateInputStream::new);
+        try {
+            Class.forName(BrotliInputStreamFactory.DECODER_CLASS_NAME, false, HttpClientPool.class.getClassLoader());
+            decoders.put("br", new BrotliInputStreamFactory());
+        } catch (ClassNotFoundException e) {
+            // 没有引入 Brotli 解码器
+        }
+        return decoders;
+    }
+
+    /**
+     * 构建请求配置
+     *
+     * @param key 客户端配置
+     * @return RequestConfig
+     */
+    static RequestConfig buildRequestConfig(HttpClientKey key) {
+        RequestConfig.Builder config = RequestConfig.custom()
+                // 设置连接超时
+                .setConnectTimeout(key.connectTimeout)
+                // 设置读取超时
+                .setSocketTimeout(key.readTimeout);
+        // 设置代理
+        if (key.proxyHost != null) {
+            config.setProxy(new HttpHost(key.proxyHost, key.proxyPort, key.proxySchema));
+        }
+        return config.build();
+    }
+
+    /**
+     * 客户端及其连接池
+     */
+    static final class PooledClient {
+
+        final CloseableHttpClient client;
+
+        final PoolingHttpClientConnectionManager manager;
+
+        /**
+         * 最近一次使用的时间, 单位纳秒
+         */
+        volatile long lastUsed;
+
+        PooledClient(CloseableHttpClient client, PoolingHttpClientConnectionManager manager) {
+            this.client = client;
+            this.manager = manager;
+        }
+
+    }
+
+    /**
+     * 异步客户端及其连接池
+     */
+    static final class PooledAsyncClient {
+
+        final CloseableHttpAsyncClient client;
+
+        final PoolingNHttpClientConnectionManager manager;
+
+        /**
+         * 最近一次使用的时间, 单位纳秒
+         */
+        volatile long lastUsed;
+
+        PooledAsyncClient(CloseableHttpAsyncClient client, PoolingNHttpClientConnectionManager manager) {
+            this.client = client;
+            this.manager = manager;
+        }
+
+    }
+
+}
@@ -2,34 +2,71 @@ package org.fanlychie.commons.httpclient;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpHost;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.cache.HttpCacheContext;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.config.RequestConfig.Builder;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
-import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.fanlychie.commons.httpclient.exception.CircuitBreakerOpenException;
+import org.fanlychie.commons.httpclient.exception.ConcurrencyLimitExceededException;
+import org.fanlychie.commons.httpclient.exception.DeadlineExceededException;
+import org.fanlychie.commons.httpclient.exception.ResponseHeaderTooLargeException;
+import org.fanlychie.commons.httpclient.exception.ResponseTooLargeException;
 import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+import org.fanlychie.commons.httpclient.handler.ChannelHandler;
+import org.fanlychie.commons.httpclient.handler.ChunkHandler;
+import org.fanlychie.commons.httpclient.handler.HttpResponseHandler;
+import org.fanlychie.commons.httpclient.handler.StreamHandler;
+import org.fanlychie.commons.httpclient.mapper.MessageConverter;
+import org.fanlychie.commons.httpclient.mapper.MessageConverters;
+import org.fanlychie.commons.httpclient.mapper.ResponseMapper;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * HTTP 客户端请求基类
  * Created by fanlychie on 2017/1/26.
  */
-public abstract class HttpClientRequest {
+public abstract class HttpClientRequest implements Cloneable {
+
+    /**
+     * 写入文件时每次传输的最大字节数
+     */
+    private static final long TRANSFER_SIZE = 1024 * 1024;
 
     /**
      * HTTP 请求
@@ -66,13 +103,101 @@ public abstract class HttpClientRequest {
      */
     private int connectTimeout = 30 * 1000;
 
+    /**
+     * 请求的总时限, 为0时不限制
+     */
+    private long deadline;
+
+    /**
+     * 响应内容的最大字节数, 为0时不限制
+     */
+    private long maxBodySize;
+
+    /**
+     * 响应头的最大字节数, 为0时不限制
+     */
+    private int maxHeaderSize;
+
+    /**
+     * 是否接受压缩的响应内容并透明解压, 默认接受
+     */
+    private boolean responseCompression = true;
+
+    /**
+     * 是否启用响应缓存, 默认不启用
+     */
+    private boolean cacheEnabled;
+
+    /**
+     * 失败重试策略, 为 null 时使用全局默认的重试策略
+     */
+    private RetryPolicy retryPolicy;
+
+    /**
+     * 熔断器, 为 null 时使用全局默认的熔断器
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * 自适应并发限制器, 为 null 时使用全局默认的并发限制器
+     */
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * 请求发往的逻辑服务的后端地址, 重试时可能改为其他后端地址; 不经过逻辑服务创建的请求为 null
+     */
+    private HttpEndpoint endpoint;
+
+    /**
+     * 请求所属的逻辑服务
+     */
+    private HttpService service;
+
+    /**
+     * 请求监听器
+     */
+    private RequestListener requestListener;
+
+    /**
+     * 响应头的观察者, 在处理响应内容之前以原始响应回调
+     */
+    private Consumer<HttpResponse> responseObserver;
+
+    /**
+     * 传输协议, 为 null 时使用全局默认的传输协议
+     */
+    private HttpTransport transport;
+
     /**
      * 响应内容编码
      */
     private String contentEncoding = "UTF-8";
 
+    /**
+     * SSL 连接工厂
+     */
     private LayeredConnectionSocketFactory sslSocketFactory;
 
+    /**
+     * 没有指定信任库时是否信任所有证书, 默认信任所有
+     */
+    private boolean trustAll = true;
+
+    /**
+     * 信任库
+     */
+    private KeyStore trustStore;
+
+    /**
+     * 客户端证书的密钥库
+     */
+    private KeyStore keyStore;
+
+    /**
+     * 客户端证书密钥的密码
+     */
+    private char[] keyPassword;
+
     /**
      * 日志
      */
@@ -101,47 +226,710 @@ public abstract class HttpClientRequest {
      * @param consumer (请求结果的状态码, 请求结果的文本内容)
      */
     public void execute(BiConsumer<Integer, String> consumer) {
-        try (CloseableHttpClient client = buildHttpClient()) {
+        HttpResult result = execute();
+        if (consumer != null) {
+            // Consumer
+            consumer.accept(result.getStatusCode(), result.getResponseText());
+        }
+    }
+
+    /**
+     * 执行请求
+     *
+     * @return 请求结果的状态码和文本内容
+     */
+    public HttpResult execute() {
+        return executeWith((statusCode, entity) -> {
+            // 响应内容
+            String responseText = readResponseText(statusCode, entity);
+            if (log.isDebugEnabled()) {
+                log.debug("statusCode: " + statusCode + ", responseText: " + responseText);
+            }
+            return new HttpResult(statusCode, responseText);
+        });
+    }
+
+    /**
+     * 执行请求, 以字节数组的形式返回响应内容, 省去解码和创建字符串的开销;
+     * 请求失败时同样返回原始的响应内容
+     *
+     * @param consumer (请求结果的状态码, 请求结果的字节内容)
+     */
+    public void executeForBytes(BiConsumer<Integer, byte[]> consumer) {
+        executeWith((statusCode, entity) -> {
+            byte[] bytes = ResponseDecoder.readBytes(entity);
+            if (consumer != null) {
+                consumer.accept(statusCode, bytes);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 执行请求, 响应内容读入池化的缓冲区后以只读的 ByteBuffer 交给调用方, 整个过程不需要为响应内容分配内存;
+     * ByteBuffer 只在回调期间有效, 回调返回后会被复用, 需要保留的内容应在回调中复制出来.
+     * 请求失败时同样返回原始的响应内容
+     *
+     * @param consumer (请求结果的状态码, 请求结果的字节内容)
+     */
+    public void executeForBuffer(BiConsumer<Integer, ByteBuffer> consumer) {
+        executeWith((statusCode, entity) -> {
+            ResponseDecoder.Slab slab = ResponseDecoder.read(entity);
+            try {
+                if (consumer != null) {
+                    consumer.accept(statusCode, ByteBuffer.wrap(slab.bytes, 0, slab.length).asReadOnlyBuffer());
+                }
+            } finally {
+                ResponseDecoder.release(slab);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 执行请求, 直接从响应内容的输入流反序列化出对象; 按响应的 Content-Type 选择已注册的消息转换器, 没有 Content-Type
+     * 时使用第一个转换器, 没有对应的转换器时抛出包装了 {@link ClientProtocolException} 的 {@link RuntimeCastException};
+     * String 和 byte[] 类型直接返回响应内容. 请求失败 ( 状态码不是 2xx ) 时抛出包装了
+     * {@link HttpResponseException} 的 {@link RuntimeCastException}
+     *
+     * @param type 对象的类型
+     * @param <T>  对象的类型
+     * @return 对象
+     * @see MessageConverters#register(MessageConverter)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Class<T> type) {
+        if (type == String.class) {
+            return (T) executeWith((statusCode, entity) -> {
+                checkStatus(statusCode);
+                return ResponseDecoder.readText(entity, getCharset(ContentType.get(entity)));
+            });
+        }
+        if (type == byte[].class) {
+            return (T) executeWith((statusCode, entity) -> {
+                checkStatus(statusCode);
+                return ResponseDecoder.readBytes(entity);
+            });
+        }
+        MessageConverter defaultConverter = MessageConverters.find(null);
+        if (defaultConverter == null) {
+            throw new IllegalStateException("no MessageConverter registered");
+        }
+        if (request.getFirstHeader(HttpHeaders.ACCEPT) == null) {
+            request.addHeader(HttpHeaders.ACCEPT, defaultConverter.getContentType().getMimeType());
+        }
+        return executeWith((statusCode, entity) -> {
+            checkStatus(statusCode);
+            ContentType contentType = ContentType.get(entity);
+            String mimeType = contentType != null ? contentType.getMimeType() : null;
+            // 没有声明内容类型时按默认的转换器读取, 声明了不支持的内容类型 ( 如 HTML 错误页 ) 时不读取
+            MessageConverter converter = MessageConverters.find(mimeType);
+            if (converter == null) {
+                throw new ClientProtocolException("no MessageConverter for content type: " + mimeType);
+            }
+            try (InputStream in = getContent(entity)) {
+                return converter.getMapper(type).map(in, getCharset(contentType));
+            }
+        });
+    }
+
+    /**
+     * 执行请求, 由响应映射器直接从响应内容的输入流反序列化出对象. 请求失败 ( 状态码不是 2xx ) 时抛出包装了
+     * {@link HttpResponseException} 的 {@link RuntimeCastException}
+     *
+     * @param mapper 响应映射器
+     * @param <T>    对象的类型
+     * @return 对象
+     */
+    public <T> T executeForObject(ResponseMapper<T> mapper) {
+        return executeWith((statusCode, entity) -> {
+            checkStatus(statusCode);
+            try (InputStream in = getContent(entity)) {
+                return mapper.map(in, getCharset(ContentType.get(entity)));
+            }
+        });
+    }
+
+    /**
+     * 执行请求, 由响应处理器直接处理响应实体, 响应内容不会预先读入内存
+     *
+     * @param handler 响应处理器
+     * @param <T>     处理结果的类型
+     * @return 处理结果
+     */
+    public <T> T executeWith(HttpResponseHandler<T> handler) {
+        HttpClientKey key = getHttpClientKey();
+        HttpTransport transport = getTransport();
+        if (requestListener == null && HttpClientPool.getListeners().isEmpty()) {
+            return transport == HttpTransport.HTTP_2 ? executeHttp2(key, handler, null) : executeHttp1(key, handler, null);
+        }
+        // 记录请求指标, DNS 解析器和连接工厂在当前线程上记录连接阶段的耗时
+        RequestMetrics metrics = new RequestMetrics(request.getMethod(), request.getURI());
+        metrics.setTransport(transport);
+        RequestMetrics previous = RequestMetrics.CURRENT.get();
+        RequestMetrics.CURRENT.set(metrics);
+        Throwable failure = null;
+        try {
+            return transport == HttpTransport.HTTP_2 ? executeHttp2(key, handler, metrics) : executeHttp1(key, handler, metrics);
+        } catch (RuntimeException e) {
+            failure = e instanceof RuntimeCastException && e.getCause() != null ? e.getCause() : e;
+            throw e;
+        } finally {
+            if (previous != null) {
+                RequestMetrics.CURRENT.set(previous);
+            } else {
+                RequestMetrics.CURRENT.remove();
+            }
+            metrics.complete(failure);
+            notifyListeners(metrics);
+        }
+    }
+
+    /**
+     * 以 HTTP/1.1 执行请求
+     *
+     * @param key     客户端配置
+     * @param handler 响应处理器
+     * @param metrics 请求指标, 不记录时为 null
+     * @param <T>     处理结果的类型
+     * @return 处理结果
+     */
+    private <T> T executeHttp1(HttpClientKey key, HttpResponseHandler<T> handler, RequestMetrics metrics) {
+        CloseableHttpClient client = HttpClientPool.getClient(key);
+        // 到期时中止请求, 阻塞在任何阶段的请求线程都立即失败
+        RequestDeadline requestDeadline = deadline > 0 ? new RequestDeadline(deadline, request::abort) : null;
+        try {
             // 发起请求前的处理工作
             preHandle(request);
+            if (metrics != null) {
+                recordRequest(metrics);
+            }
+            // 不接受压缩时不发送 Accept-Encoding, 也不解压响应内容; 每次执行都重新设置, 接受压缩时使用客户端的默认配置
+            request.setConfig(responseCompression ? null : RequestConfig.copy(HttpClientPool.buildRequestConfig(key))
+                    .setContentCompressionEnabled(false).build());
             // 执行请求
-            HttpResponse response = client.execute(request);
-            // 状态码
-            int statusCode = response.getStatusLine().getStatusCode();
-            // 响应内容
-            String responseText = null;
-            // 请求失败
-            if (statusCode != HttpStatus.SC_OK) {
-                // 尝试获取友好的提示消息内容
-                responseText = getSimpleResponseText(statusCode);
-            }
-            // 处理响应内容
-            if (responseText == null) {
-                // 响应内容
-                StringBuilder responseTextBuilder = new StringBuilder();
-                // 响应内容读取对象
-                Reader reader = new InputStreamReader(response.getEntity().getContent(), contentEncoding);
-                // 读取响应内容
-                try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-                    String line = null;
-                    while ((line = bufferedReader.readLine()) != null) {
-                        responseTextBuilder.append(line);
+            HttpCacheContext context = HttpCacheContext.create();
+            if (request instanceof HttpEntityEnclosingRequest
+                    && ((HttpEntityEnclosingRequest) request).getEntity() instanceof MultipartEntity) {
+                // 明文连接上文件内容直接发送到套接字通道
+                ((MultipartEntity) ((HttpEntityEnclosingRequest) request).getEntity()).setContext(context);
+            }
+            if (maxHeaderSize > 0) {
+                // 由连接的响应解析器在当前线程上读取
+                LimitedResponseParserFactory.MAX_HEADER_SIZE.set(maxHeaderSize);
+            }
+            try (CloseableHttpResponse response = send(client, context, requestDeadline)) {
+                if (cacheEnabled) {
+                    HttpClientPool.recordCacheResponse(context.getCacheResponseStatus());
+                }
+                // 状态码
+                int statusCode = response.getStatusLine().getStatusCode();
+                HttpEntity entity = response.getEntity();
+                if (responseObserver != null) {
+                    responseObserver.accept(response);
+                }
+                if (maxBodySize > 0 && entity != null) {
+                    if (entity.getContentLength() > maxBodySize) {
+                        // 声明的长度已超出, 不读取直接断开连接
+                        request.abort();
+                        throw new ResponseTooLargeException(maxBodySize, entity.getContentLength());
                     }
+                    entity = CountingEntity.limit(entity, maxBodySize, request::abort);
                 }
-                responseText = responseTextBuilder.toString();
+                if (metrics != null) {
+                    metrics.responseReceived(statusCode);
+                    entity = entity != null ? new CountingEntity(entity, metrics::addResponseBytes) : null;
+                }
+                T result = handler.handle(statusCode, entity);
+                // 读完剩余的响应内容, 使连接可以归还到连接池中复用; 处理出错时不读取, 关闭响应时直接断开连接;
+                // 处理器已中止请求时连接已断开, 不再读取
+                if (!request.isAborted()) {
+                    try {
+                        EntityUtils.consume(entity);
+                    } catch (ResponseTooLargeException e) {
+                        // 剩余的内容超出最大字节数, 连接已断开, 不影响处理结果
+                    }
+                }
+                return result;
             }
-            if (log.isDebugEnabled()) {
-                log.debug("statusCode: " + statusCode + ", responseText: " + responseText);
+        } catch (CircuitBreakerOpenException | ConcurrencyLimitExceededException | DeadlineExceededException
+                | ResponseTooLargeException | ResponseHeaderTooLargeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw failure(e, requestDeadline);
+        } finally {
+            if (requestDeadline != null) {
+                requestDeadline.cancel();
             }
-            if (consumer != null) {
-                // Consumer
-                consumer.accept(statusCode, responseText);
+            if (maxHeaderSize > 0) {
+                LimitedResponseParserFactory.MAX_HEADER_SIZE.remove();
+            }
+        }
+    }
+
+    /**
+     * 请求失败的异常; 超出限制的异常即使被处理器包装也原样抛出, 超出总时限导致的失败抛出
+     * {@link DeadlineExceededException}, 其余的包装为 {@link RuntimeCastException}
+     *
+     * @param e               异常
+     * @param requestDeadline 请求的总时限, 没有设置时为 null
+     * @return RuntimeException
+     */
+    private static RuntimeException failure(Exception e, RequestDeadline requestDeadline) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof ResponseTooLargeException || cause instanceof ResponseHeaderTooLargeException
+                    || cause instanceof DeadlineExceededException) {
+                return (RuntimeException) cause;
+            }
+        }
+        if (requestDeadline != null && requestDeadline.isExpired()) {
+            return requestDeadline.exceeded();
+        }
+        return new RuntimeCastException(e);
+    }
+
+    /**
+     * 记录最终的请求地址和请求内容的字节数
+     *
+     * @param metrics 请求指标
+     */
+    private void recordRequest(RequestMetrics metrics) {
+        metrics.setUri(request.getURI());
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            metrics.setRequestBytes(entity != null ? entity.getContentLength() : 0);
+        } else {
+            metrics.setRequestBytes(0);
+        }
+    }
+
+    /**
+     * 通知请求监听器, 监听器抛出的异常被忽略
+     *
+     * @param metrics 请求指标
+     */
+    private void notifyListeners(RequestMetrics metrics) {
+        if (requestListener != null) {
+            notifyListener(requestListener, metrics);
+        }
+        for (RequestListener listener : HttpClientPool.getListeners()) {
+            notifyListener(listener, metrics);
+        }
+    }
+
+    /**
+     * 通知请求监听器
+     *
+     * @param listener 请求监听器
+     * @param metrics  请求指标
+     */
+    private void notifyListener(RequestListener listener, RequestMetrics metrics) {
+        try {
+            listener.onComplete(metrics);
+        } catch (RuntimeException e) {
+            log.warn("request listener failed", e);
+        }
+    }
+
+    /**
+     * 发送请求, 设置了重试策略时按策略退避重试, 返回最后一次的响应; 每次尝试分别经过熔断器和自适应并发限制器,
+     * 退避等待的时间不计入请求耗时
+     *
+     * @param client          HTTP 客户端
+     * @param context         请求上下文
+     * @param requestDeadline 请求的总时限, 没有设置时为 null
+     * @return CloseableHttpResponse
+     * @throws Exception
+     */
+    private CloseableHttpResponse send(CloseableHttpClient client, HttpCacheContext context, RequestDeadline requestDeadline)
+            throws Exception {
+        RetryPolicy policy = getRetryPolicy();
+        if (policy == null) {
+            return guard(() -> client.execute(request, context));
+        }
+        policy.onRequest();
+        for (int retries = 0; ; retries++) {
+            CloseableHttpResponse response;
+            try {
+                response = guard(() -> client.execute(request, context));
+            } catch (IOException e) {
+                long delay = policy.getDelay(retries, null);
+                // 等待重试会超出总时限时不再重试
+                if (!policy.shouldRetry(request, e, retries)
+                        || requestDeadline != null && requestDeadline.remaining() <= delay) {
+                    throw e;
+                }
+                log.debug("retry " + (retries + 1) + " after " + delay + "ms: " + e);
+                RequestMetrics.recordRetry();
+                Thread.sleep(delay);
+                request.reset();
+                reselectEndpoint();
+                if (requestDeadline != null) {
+                    // 重置清除了中止状态, 等待期间到期的请求不再发送
+                    requestDeadline.check();
+                }
+                continue;
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            long delay = policy.getDelay(retries, response);
+            if (delay < 0 || !policy.shouldRetry(request, statusCode, retries)
+                    || requestDeadline != null && requestDeadline.remaining() <= delay) {
+                return response;
+            }
+            // 读完响应内容, 使连接可以复用
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
+            log.debug("retry " + (retries + 1) + " after " + delay + "ms: HTTP " + statusCode);
+            RequestMetrics.recordRetry();
+            Thread.sleep(delay);
+            request.reset();
+            reselectEndpoint();
+            if (requestDeadline != null) {
+                requestDeadline.check();
+            }
+        }
+    }
+
+    /**
+     * 重试前重新选择逻辑服务的后端地址, 尽量避开刚刚失败的后端地址, 并将请求地址改为新的后端地址
+     */
+    private void reselectEndpoint() {
+        if (endpoint == null) {
+            return;
+        }
+        HttpEndpoint next = service.select(endpoint);
+        String uri = request.getURI().toString();
+        String baseUrl = endpoint.getBaseUrl();
+        if (next != endpoint && uri.startsWith(baseUrl)) {
+            request.setURI(URI.create(next.getBaseUrl() + uri.substring(baseUrl.length())));
+            endpoint = next;
+        }
+    }
+
+    /**
+     * 以 HTTP/2 执行请求, 响应内容已在内存中缓冲
+     *
+     * @param key     客户端配置
+     * @param handler 响应处理器
+     * @param metrics 请求指标, 不记录时为 null
+     * @param <T>     处理结果的类型
+     * @return 处理结果
+     */
+    private <T> T executeHttp2(HttpClientKey key, HttpResponseHandler<T> handler, RequestMetrics metrics) {
+        // 响应内容在收到响应时已读完, 只需限制等待响应的时间
+        RequestDeadline requestDeadline = deadline > 0 ? new RequestDeadline(deadline, null) : null;
+        try {
+            // 发起请求前的处理工作
+            preHandle(request);
+            if (metrics != null) {
+                recordRequest(metrics);
+            }
+            HttpResponse response = guard(() -> sendHttp2(key, requestDeadline));
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (responseObserver != null) {
+                responseObserver.accept(response);
+            }
+            if (metrics != null) {
+                metrics.responseReceived(statusCode);
+                entity = entity != null ? new CountingEntity(entity, metrics::addResponseBytes) : null;
+            }
+            return handler.handle(statusCode, entity);
+        } catch (CircuitBreakerOpenException | ConcurrencyLimitExceededException | DeadlineExceededException
+                | ResponseTooLargeException | ResponseHeaderTooLargeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw failure(e, requestDeadline);
+        }
+    }
+
+    /**
+     * 以 HTTP/2 发送请求并等待响应; 超出限制或总时限时取消请求, 重置该流
+     *
+     * @param key             客户端配置
+     * @param requestDeadline 请求的总时限, 没有设置时为 null
+     * @return HttpResponse
+     * @throws Exception
+     */
+    private HttpResponse sendHttp2(HttpClientKey key, RequestDeadline requestDeadline) throws Exception {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        Future<?> exchange = Http2Transport.execute(key, request, maxHeaderSize, maxBodySize, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        try {
+            return requestDeadline != null ? future.get(requestDeadline.remaining(), TimeUnit.MILLISECONDS) : future.get();
+        } catch (ExecutionException e) {
+            exchange.cancel(true);
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            exchange.cancel(true);
+            throw requestDeadline.exceeded();
+        }
+    }
+
+    /**
+     * 在熔断器和自适应并发限制器的保护下发送一次请求, 都没有设置且不经过逻辑服务时直接发送; 请求耗时统计到收到响应头为止,
+     * I/O 异常和 5xx 响应计为失败. 重试时每次尝试分别调用, 退避等待不计入耗时
+     *
+     * @param call 发送请求
+     * @param <R>  响应的类型
+     * @return 响应
+     * @throws Exception
+     */
+    private <R extends HttpResponse> R guard(Callable<R> call) throws Exception {
+        CircuitBreaker breaker = circuitBreaker != null ? circuitBreaker : HttpClientPool.getDefaultCircuitBreaker();
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiter != null ? concurrencyLimiter : HttpClientPool.getDefaultConcurrencyLimiter();
+        if (breaker == null && limiter == null && endpoint == null) {
+            return call.call();
+        }
+        String host = URIUtils.extractHost(request.getURI()).toURI();
+        if (breaker != null) {
+            breaker.acquire(host);
+        }
+        if (limiter != null) {
+            try {
+                limiter.acquire(host);
+            } catch (ConcurrencyLimitExceededException e) {
+                if (breaker != null) {
+                    breaker.cancel(host);
+                }
+                throw e;
+            }
+        }
+        if (endpoint != null) {
+            endpoint.start();
+        }
+        long start = System.nanoTime();
+        boolean failure = true;
+        try {
+            R response = call.call();
+            failure = response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            return response;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long duration = elapsed / 1000000;
+            if (limiter != null) {
+                limiter.release(host, duration, failure);
+            }
+            if (breaker != null) {
+                breaker.record(host, duration, failure);
+            }
+            if (endpoint != null) {
+                service.complete(endpoint, elapsed, failure);
+            }
+        }
+    }
+
+    /**
+     * 执行请求, 由处理器直接读取响应内容的原始输入流
+     *
+     * @param handler 响应流处理器
+     * @param <T>     处理结果的类型
+     * @return 处理结果
+     */
+    public <T> T executeForStream(StreamHandler<T> handler) {
+        return executeWith((statusCode, entity) -> {
+            try (InputStream in = getContent(entity)) {
+                return handler.handle(statusCode, in);
+            }
+        });
+    }
+
+    /**
+     * 执行请求, 由处理器以 NIO 通道的方式读取响应内容
+     *
+     * @param handler 响应通道处理器
+     * @param <T>     处理结果的类型
+     * @return 处理结果
+     */
+    public <T> T executeForChannel(ChannelHandler<T> handler) {
+        return executeWith((statusCode, entity) -> {
+            try (ReadableByteChannel channel = Channels.newChannel(getContent(entity))) {
+                return handler.handle(statusCode, channel);
+            }
+        });
+    }
+
+    /**
+     * 执行请求, 响应内容通过 {@link FileChannel#transferFrom} 直接写入文件, 文件已存在时覆盖
+     *
+     * @param path 文件路径
+     * @return 请求结果的状态码
+     */
+    public int executeToFile(Path path) {
+        return executeForChannel((statusCode, channel) -> {
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                long transferred;
+                while ((transferred = fileChannel.transferFrom(channel, position, TRANSFER_SIZE)) > 0) {
+                    position += transferred;
+                }
+            }
+            return statusCode;
+        });
+    }
+
+    /**
+     * 执行请求, 逐块处理响应内容; 上一块处理完成之前不会读取下一块, 处理器返回 false 时停止读取并断开连接
+     *
+     * @param chunkSize 每块的最大字节数
+     * @param handler   响应分块处理器
+     * @return 请求结果的状态码
+     */
+    public int executeForChunks(int chunkSize, ChunkHandler handler) {
+        return executeWith((statusCode, entity) -> {
+            InputStream in = getContent(entity);
+            ReadableByteChannel channel = Channels.newChannel(in);
+            ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                if (!handler.handle(statusCode, chunk)) {
+                    // 中止请求断开连接, 不再读取剩余的响应内容
+                    request.abort();
+                    return statusCode;
+                }
+                chunk.clear();
             }
+            in.close();
+            return statusCode;
+        });
+    }
+
+    /**
+     * 在虚拟线程 ( JDK 21+, 更低版本的 JDK 上为守护线程 ) 上阻塞执行请求, 同时进行的请求数量受
+     * {@link HttpClientUtils#setMaxConcurrency(int)} 限制
+     *
+     * @return 请求结果的状态码和文本内容
+     */
+    public CompletableFuture<HttpResult> submit() {
+        return HttpClientExecutor.submit(this::execute);
+    }
+
+    /**
+     * 异步执行请求, 请求在 NIO 的 I/O 线程上完成, 不会阻塞调用者线程;
+     * 结果回调同样运行在 I/O 线程上, 耗时的后续处理应切换到其他线程执行.
+     * 异步执行不使用失败重试; 传输协议为 HTTP/2 时由 HTTP/2 客户端执行.
+     * NIO 客户端无法使用 httpclient 4 的 SSL 连接工厂, 设置了自定义的 SSL 连接工厂时等同于 {@link #submit()}
+     *
+     * @return 请求结果的状态码和文本内容
+     */
+    public CompletableFuture<HttpResult> executeAsync() {
+        if (sslSocketFactory != null) {
+            return submit();
+        }
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        try {
+            HttpClientKey key = getHttpClientKey();
+            boolean http2 = getTransport() == HttpTransport.HTTP_2;
+            CloseableHttpAsyncClient client = http2 ? null : HttpClientPool.getAsyncClient(key);
+            // 发起请求前的处理工作
+            preHandle(request);
+            FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    try {
+                        // 状态码
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        // 响应内容
+                        String responseText = readResponseText(statusCode, response.getEntity());
+                        if (log.isDebugEnabled()) {
+                            log.debug("statusCode: " + statusCode + ", responseText: " + responseText);
+                        }
+                        future.complete(new HttpResult(statusCode, responseText));
+                    } catch (Exception e) {
+                        future.completeExceptionally(new RuntimeCastException(e));
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    future.completeExceptionally(new RuntimeCastException(e));
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel(false);
+                }
+            };
+            // 执行请求
+            Future<?> responseFuture = http2 ? Http2Transport.execute(key, request, callback) : client.execute(request, callback);
+            // 取消结果时同时取消请求
+            future.whenComplete((result, e) -> {
+                if (future.isCancelled()) {
+                    responseFuture.cancel(true);
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(new RuntimeCastException(e));
+        }
+        return future;
+    }
+
+    /**
+     * 按当前请求的配置预先建立到目标主机的连接并放回共享的连接池, https 连接同时完成 TLS 握手,
+     * 之后的请求直接复用这些连接; 连接池中已有的空闲连接计入数量. 经代理的 https 连接不预先建立
+     *
+     * @param connections 连接数, 不超过每个路由的最大连接数
+     * @return 新建立的连接数
+     */
+    public int warmUp(int connections) {
+        try {
+            return HttpClientPool.warmUp(getHttpClientKey(), URIUtils.extractHost(request.getURI()), connections);
         } catch (Exception e) {
             throw new RuntimeCastException(e);
         }
     }
 
+    /**
+     * HTTP 请求
+     *
+     * @return HttpRequestBase
+     */
+    protected HttpRequestBase getRequest() {
+        return request;
+    }
+
+    /**
+     * 设置请求发往的逻辑服务的后端地址
+     *
+     * @param endpoint 后端地址
+     * @param service  逻辑服务
+     */
+    void setEndpoint(HttpEndpoint endpoint, HttpService service) {
+        this.endpoint = endpoint;
+        this.service = service;
+    }
+
+    /**
+     * 复制当前请求的所有配置, 复制出的请求使用新的 HTTP 请求, 可以与当前请求并发执行
+     *
+     * @param request 新的 HTTP 请求
+     * @return HttpClientRequest
+     */
+    HttpClientRequest copy(HttpRequestBase request) {
+        try {
+            HttpClientRequest copy = (HttpClientRequest) super.clone();
+            copy.request = request;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
     /**
      * 添加请求头参数
      *
@@ -176,6 +964,66 @@ public abstract class HttpClientRequest {
         return this;
     }
 
+    /**
+     * 设置失败重试策略, 设置后 {@link #setRetryTimes(int)} 不再生效; 不设置时使用
+     * {@link HttpClientUtils#setRetryPolicy(RetryPolicy)} 设置的全局默认值, 都没有设置时只在 I/O 异常时立即重试.
+     * 只作用于以 HTTP/1.1 同步执行的请求
+     *
+     * @param retryPolicy 失败重试策略
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * 设置熔断器, 不设置时使用 {@link HttpClientUtils#setCircuitBreaker(CircuitBreaker)} 设置的全局默认值;
+     * 熔断器打开时请求直接抛出 {@link CircuitBreakerOpenException}. 只作用于同步执行的请求
+     *
+     * @param circuitBreaker 熔断器
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * 设置自适应并发限制器, 不设置时使用 {@link HttpClientUtils#setConcurrencyLimiter(AdaptiveConcurrencyLimiter)}
+     * 设置的全局默认值; 并发请求数达到限制时请求直接抛出 {@link ConcurrencyLimitExceededException}. 只作用于同步执行的请求
+     *
+     * @param concurrencyLimiter 自适应并发限制器
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * 设置请求监听器, 请求结束后以请求指标 ( 各阶段耗时、字节数、状态码、重试次数 ) 回调; 与
+     * {@link HttpClientUtils#addRequestListener(RequestListener)} 添加的全局监听器同时生效. 只作用于同步执行的请求
+     *
+     * @param requestListener 请求监听器
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setRequestListener(RequestListener requestListener) {
+        this.requestListener = requestListener;
+        return this;
+    }
+
+    /**
+     * 设置响应头的观察者, 收到响应后、处理响应内容之前以原始响应回调, 用于读取处理器拿不到的响应头
+     *
+     * @param responseObserver 响应头的观察者
+     * @return HttpClientRequest
+     */
+    HttpClientRequest setResponseObserver(Consumer<HttpResponse> responseObserver) {
+        this.responseObserver = responseObserver;
+        return this;
+    }
+
     /**
      * 设置读取超时时间, 单位毫秒, 默认3分钟
      *
@@ -198,6 +1046,42 @@ public abstract class HttpClientRequest {
         return this;
     }
 
+    /**
+     * 设置请求的总时限, 单位毫秒, 覆盖等待连接、建立连接、重试和读取响应内容的整个过程; 到期时断开连接并抛出
+     * {@link DeadlineExceededException}, 默认不限制. 只作用于同步执行的请求
+     *
+     * @param deadline 总时限, 为0时不限制
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setDeadline(long deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * 设置响应内容的最大字节数 ( 压缩的响应内容按解压后计算 ), 声明的长度或读取的字节数超出时断开连接并抛出
+     * {@link ResponseTooLargeException}, 默认不限制. 只作用于同步执行的请求
+     *
+     * @param maxBodySize 最大字节数, 为0时不限制
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
+    /**
+     * 设置响应的状态行和响应头的最大字节数, 解析时超出即断开连接并抛出 {@link ResponseHeaderTooLargeException},
+     * 默认不限制. 只作用于同步执行的请求
+     *
+     * @param maxHeaderSize 最大字节数, 为0时不限制
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setMaxHeaderSize(int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+        return this;
+    }
+
     /**
      * 设置 HTTP 代理
      *
@@ -237,48 +1121,218 @@ public abstract class HttpClientRequest {
         return this;
     }
 
+    /**
+     * 设置传输协议, 不设置时使用 {@link HttpClientUtils#setDefaultTransport(HttpTransport)} 设置的全局默认值;
+     * HTTP/2 传输在内存中缓冲响应内容, 不支持响应缓存和失败重试; 设置了代理或自定义的 SSL 连接工厂的请求仍以 HTTP/1.1 执行
+     *
+     * @param transport 传输协议
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setTransport(HttpTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * 设置是否接受压缩 ( gzip、deflate, 引入 org.brotli:dec 时还包括 br ) 的响应内容, 默认接受;
+     * 接受时发送 Accept-Encoding 请求头, 响应内容在读取时以流的方式透明解压. 只作用于同步执行的请求
+     *
+     * @param responseCompression 是否接受压缩的响应内容
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+        return this;
+    }
+
+    /**
+     * 设置是否启用响应缓存, 默认不启用; 启用后按 Cache-Control、ETag 和 Last-Modified 缓存 GET 请求的响应,
+     * 过期后以条件请求重新验证, 服务器返回 304 时直接使用缓存的内容. 只作用于同步执行的请求
+     *
+     * @param cacheEnabled 是否启用响应缓存
+     * @return HttpClientRequest
+     * @see HttpClientUtils#setCache(int, long, Path)
+     */
+    public HttpClientRequest setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        return this;
+    }
+
+    /**
+     * 设置没有指定信任库时是否信任所有证书, 默认信任所有; 设置为 false 时使用 JDK 默认的信任库校验服务器证书
+     *
+     * @param trustAll 是否信任所有证书
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setTrustAll(boolean trustAll) {
+        this.trustAll = trustAll;
+        return this;
+    }
+
+    /**
+     * 设置信任库, 只信任信任库中的证书签发的服务器证书
+     *
+     * @param trustStore 信任库
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setTrustStore(KeyStore trustStore) {
+        this.trustStore = trustStore;
+        return this;
+    }
+
+    /**
+     * 设置信任库文件, 同一个文件在进程内只加载一次
+     *
+     * @param path     信任库文件
+     * @param password 信任库的密码
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setTrustStore(Path path, String password) {
+        return setTrustStore(SSLContextCache.loadKeyStore(path, password));
+    }
+
+    /**
+     * 设置客户端证书的密钥库, 用于双向认证
+     *
+     * @param keyStore    密钥库
+     * @param keyPassword 密钥的密码
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setKeyStore(KeyStore keyStore, String keyPassword) {
+        this.keyStore = keyStore;
+        this.keyPassword = keyPassword != null ? keyPassword.toCharArray() : null;
+        return this;
+    }
+
+    /**
+     * 设置客户端证书的密钥库文件, 用于双向认证, 同一个文件在进程内只加载一次
+     *
+     * @param path     密钥库文件
+     * @param password 密钥库及密钥的密码
+     * @return HttpClientRequest
+     */
+    public HttpClientRequest setKeyStore(Path path, String password) {
+        return setKeyStore(SSLContextCache.loadKeyStore(path, password), password);
+    }
+
+    /**
+     * 设置 SSL 连接工厂, 设置后信任库和密钥库的设置不再生效; 不设置时使用进程内共享的 SSL 上下文
+     *
+     * @param sslSocketFactory SSL 连接工厂
+     * @return HttpClientRequest
+     */
     public HttpClientRequest setSSLSocketFactory(LayeredConnectionSocketFactory sslSocketFactory) {
         this.sslSocketFactory = sslSocketFactory;
         return this;
     }
 
     /**
-     * 构建 HTTP 客户端对象
+     * 当前请求使用的失败重试策略
      *
-     * @return CloseableHttpClient
-     * @throws Exception
+     * @return RetryPolicy, 没有设置时返回 null
+     */
+    private RetryPolicy getRetryPolicy() {
+        return retryPolicy != null ? retryPolicy : HttpClientPool.getDefaultRetryPolicy();
+    }
+
+    /**
+     * 当前请求使用的传输协议
+     *
+     * @return HttpTransport
+     */
+    HttpTransport getTransport() {
+        HttpTransport result = transport != null ? transport : HttpClientPool.getDefaultTransport();
+        if (result == HttpTransport.HTTP_2 && (proxyHost != null || sslSocketFactory != null)) {
+            // HTTP/2 客户端不支持代理和 httpclient 4 的 SSL 连接工厂, 退回 HTTP/1.1
+            return HttpTransport.HTTP_1_1;
+        }
+        return result;
+    }
+
+    /**
+     * 当前请求配置对应的客户端键
+     *
+     * @return HttpClientKey
+     */
+    HttpClientKey getHttpClientKey() {
+        SSLContext sslContext = null;
+        if (sslSocketFactory == null) {
+            // 相同的信任材料和密钥材料共用同一个 SSL 上下文, 以便复用 TLS 会话
+            sslContext = SSLContextCache.getContext(trustAll, trustStore, keyStore, keyPassword);
+        }
+        // 设置了重试策略时由重试策略负责重试, 客户端本身不再重试
+        return new HttpClientKey(proxyHost, proxyPort, proxySchema, sslSocketFactory, sslContext,
+                getRetryPolicy() != null ? 0 : retryTimes, readTimeout, connectTimeout, cacheEnabled, usesSocketChannel());
+    }
+
+    /**
+     * 明文连接是否使用由套接字通道支持的套接字, 只有需要 transferTo 直接发送文件内容的请求才使用;
+     * 这种套接字上阻塞的线程被中断时会关闭连接
+     *
+     * @return 默认 false
+     */
+    boolean usesSocketChannel() {
+        return false;
+    }
+
+    /**
+     * 读取响应内容
+     *
+     * @param statusCode 状态码
+     * @param entity     响应实体
+     * @return 返回响应的文本内容, 请求失败时尽量返回友好的提示消息内容
+     * @throws IOException
+     */
+    private String readResponseText(int statusCode, HttpEntity entity) throws IOException {
+        // 请求失败
+        if (statusCode != HttpStatus.SC_OK) {
+            // 尝试获取友好的提示消息内容
+            String responseText = getSimpleResponseText(statusCode);
+            if (responseText != null) {
+                return responseText;
+            }
+        }
+        if (entity == null) {
+            return null;
+        }
+        return ResponseDecoder.readText(entity, Charset.forName(contentEncoding));
+    }
+
+    /**
+     * 检查状态码, 不是 2xx 时抛出异常
+     *
+     * @param statusCode 状态码
+     * @throws HttpResponseException
+     */
+    private void checkStatus(int statusCode) throws HttpResponseException {
+        if (statusCode < 200 || statusCode >= 300) {
+            String message = getSimpleResponseText(statusCode);
+            throw new HttpResponseException(statusCode, message != null ? message : "HTTP " + statusCode);
+        }
+    }
+
+    /**
+     * 响应内容的字符集, 优先使用响应的 Content-Type 中声明的字符集
+     *
+     * @param contentType 响应的内容类型
+     * @return Charset
+     */
+    private Charset getCharset(ContentType contentType) {
+        if (contentType != null && contentType.getCharset() != null) {
+            return contentType.getCharset();
+        }
+        return Charset.forName(contentEncoding);
+    }
+
+    /**
+     * 响应内容的输入流
+     *
+     * @param entity 响应实体
+     * @return 响应实体为 null 时返回空的输入流
+     * @throws IOException
      */
-    private CloseableHttpClient buildHttpClient() throws Exception {
-        // 请求配置
-        Builder config = RequestConfig.custom()
-                // 设置连接超时
-                .setConnectTimeout(connectTimeout)
-                // 设置读取超时
-                .setSocketTimeout(readTimeout);
-        // 设置代理
-        if (proxyHost != null) {
-            config.setProxy(new HttpHost(proxyHost, proxyPort, proxySchema));
-        }
-        // 客户端构建器
-        HttpClientBuilder clientBuilder = HttpClientBuilder.create()
-                // 设置请求配置
-                .setDefaultRequestConfig(config.build())
-                // 设置失败重试
-                .setRetryHandler(new StandardHttpRequestRetryHandler(retryTimes, true));
-        // 是否使用SSL协议链接
-        if (request.getURI().getScheme().equalsIgnoreCase("https")) {
-            if (sslSocketFactory == null) {
-                sslSocketFactory = new SSLConnectionSocketFactory(
-                        new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
-                            // 信任所有
-                            public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-                                return true;
-                            }
-                        }).build());
-            }
-            clientBuilder.setSSLSocketFactory(sslSocketFactory);
-        }
-        return clientBuilder.build();
+    private static InputStream getContent(HttpEntity entity) throws IOException {
+        return entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
     }
 
     /**
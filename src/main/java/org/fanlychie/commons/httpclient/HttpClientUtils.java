@@ -4,6 +4,17 @@ import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.pool.PoolStats;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 /**
  * HTTP 客户端请求工具类
@@ -78,4 +89,253 @@ public final class HttpClientUtils {
         return new HttpUriRequest(new HttpDelete(url));
     }
 
+    /**
+     * 设置每个连接池的最大连接数, 默认200
+     *
+     * @param maxTotal 最大连接数
+     */
+    public static void setMaxTotalConnections(int maxTotal) {
+        HttpClientPool.setMaxTotal(maxTotal);
+    }
+
+    /**
+     * 设置每个路由 ( 目标主机 ) 的最大连接数, 默认20
+     *
+     * @param maxPerRoute 每个路由的最大连接数
+     */
+    public static void setMaxConnectionsPerRoute(int maxPerRoute) {
+        HttpClientPool.setMaxPerRoute(maxPerRoute);
+    }
+
+    /**
+     * 设置空闲连接的最大存活时间, 单位毫秒, 默认60秒, 只作用于之后创建的客户端;
+     * 超过该时间 ( 至少1分钟 ) 没有使用的客户端连同连接池一起关闭, 下次请求时重新创建
+     *
+     * @param maxIdleTime 空闲时间
+     */
+    public static void setMaxIdleTime(long maxIdleTime) {
+        HttpClientPool.setMaxIdleTime(maxIdleTime);
+    }
+
+    /**
+     * 设置 {@link HttpClientRequest#submit()} 和 {@link #executeAll(Collection)} 的最大并发请求数, 默认1000;
+     * 连接池的总连接数和每个路由的连接数不足时一并调大
+     *
+     * @param maxConcurrency 最大并发请求数
+     */
+    public static void setMaxConcurrency(int maxConcurrency) {
+        HttpClientExecutor.setMaxConcurrency(maxConcurrency);
+    }
+
+    /**
+     * 在虚拟线程上并发执行一批请求, 等待全部完成后按提交顺序返回结果
+     *
+     * @param requests 请求集合
+     * @return 按提交顺序排列的请求结果
+     */
+    public static List<HttpResult> executeAll(Collection<? extends HttpClientRequest> requests) {
+        List<CompletableFuture<HttpResult>> futures = new ArrayList<>(requests.size());
+        for (HttpClientRequest request : requests) {
+            futures.add(request.submit());
+        }
+        List<HttpResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<HttpResult> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeCastException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 创建批量请求, 以有界的并发执行一批请求, 单个请求的失败不中断整批请求
+     *
+     * @param requests 请求集合
+     * @return HttpBatch
+     */
+    public static HttpBatch batch(Collection<? extends HttpClientRequest> requests) {
+        return new HttpBatch(requests);
+    }
+
+    /**
+     * 创建批量请求, 请求在执行时按需从流中取出
+     *
+     * @param requests 请求流
+     * @return HttpBatch
+     */
+    public static HttpBatch batch(Stream<? extends HttpClientRequest> requests) {
+        return new HttpBatch(requests);
+    }
+
+    /**
+     * 创建分段并行下载, 服务端支持范围请求时以多个连接并行下载各个分段, 失败后再次执行可续传
+     *
+     * @param url    请求地址
+     * @param target 目标文件
+     * @return HttpDownload
+     */
+    public static HttpDownload download(String url, Path target) {
+        return new HttpDownload(() -> get(url), target);
+    }
+
+    /**
+     * 设置内存中的响应缓存, 默认最多缓存1000条、单条不超过1MB; 已缓存的内容被丢弃, 已创建的使用缓存的客户端被关闭并在下次请求时重新创建
+     *
+     * @param maxEntries    最大缓存条目数, 超出时按最近最少使用淘汰
+     * @param maxObjectSize 可缓存的单个响应内容的最大字节数
+     * @see HttpClientRequest#setCacheEnabled(boolean)
+     */
+    public static void setCache(int maxEntries, long maxObjectSize) {
+        HttpClientPool.setCache(maxEntries, maxObjectSize, null);
+    }
+
+    /**
+     * 设置响应缓存, 缓存条目的索引在内存中, 缓存内容存放在磁盘目录下; 已缓存的内容被丢弃, 已创建的使用缓存的客户端被关闭并在下次请求时重新创建
+     *
+     * @param maxEntries    最大缓存条目数, 超出时按最近最少使用淘汰
+     * @param maxObjectSize 可缓存的单个响应内容的最大字节数
+     * @param directory     缓存内容的存放目录, 为 null 时存放在内存中
+     * @see HttpClientRequest#setCacheEnabled(boolean)
+     */
+    public static void setCache(int maxEntries, long maxObjectSize, Path directory) {
+        HttpClientPool.setCache(maxEntries, maxObjectSize, directory);
+    }
+
+    /**
+     * 响应缓存的命中、未命中和重新验证次数
+     *
+     * @return HttpCacheStatistics
+     */
+    public static HttpCacheStatistics getCacheStatistics() {
+        return HttpClientPool.getCacheStatistics();
+    }
+
+    /**
+     * 设置 TLS 会话缓存, 默认最多缓存1000个会话、1小时过期; 缓存的会话使重复连接同一主机时可以恢复会话, 省去完整的握手
+     *
+     * @param size    会话缓存的最大数量
+     * @param timeout 会话缓存的超时时间, 单位秒
+     */
+    public static void setSSLSessionCache(int size, int timeout) {
+        SSLContextCache.setSessionCache(size, timeout);
+    }
+
+    /**
+     * 设置全局默认的失败重试策略, 默认没有, 此时只在 I/O 异常时按请求的重试次数立即重试
+     *
+     * @param retryPolicy 失败重试策略, 为 null 时取消
+     * @see HttpClientRequest#setRetryPolicy(RetryPolicy)
+     */
+    public static void setRetryPolicy(RetryPolicy retryPolicy) {
+        HttpClientPool.setDefaultRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * 设置全局默认的熔断器, 默认没有; 熔断按主机进行, 同一个熔断器可以被所有请求共用
+     *
+     * @param circuitBreaker 熔断器, 为 null 时取消
+     * @see HttpClientRequest#setCircuitBreaker(CircuitBreaker)
+     */
+    public static void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        HttpClientPool.setDefaultCircuitBreaker(circuitBreaker);
+    }
+
+    /**
+     * 设置全局默认的自适应并发限制器, 默认没有; 并发限制按主机进行, 同一个限制器可以被所有请求共用
+     *
+     * @param concurrencyLimiter 自适应并发限制器, 为 null 时取消
+     * @see HttpClientRequest#setConcurrencyLimiter(AdaptiveConcurrencyLimiter)
+     */
+    public static void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        HttpClientPool.setDefaultConcurrencyLimiter(concurrencyLimiter);
+    }
+
+    /**
+     * 设置 DNS 解析器, 默认使用 {@link CachingDnsResolver} 缓存解析结果60秒; 只作用于之后创建的客户端 ( 可先调用 {@link #shutdown()} )
+     *
+     * @param dnsResolver DNS 解析器, 为 null 时每次建立连接都使用系统解析器
+     */
+    public static void setDnsResolver(DnsResolver dnsResolver) {
+        HttpClientPool.setDnsResolver(dnsResolver);
+    }
+
+    /**
+     * 以默认配置预先建立到各个地址所在主机的连接, 适合在应用启动时调用, 使首批请求不必等待 DNS 解析、TCP 连接和 TLS 握手;
+     * 使用非默认配置 ( 如超时时间、证书 ) 的请求应调用 {@link HttpClientRequest#warmUp(int)}
+     *
+     * @param connectionsPerRoute 每个主机的连接数
+     * @param urls                请求地址, 只使用其中的协议、主机和端口
+     * @return 新建立的连接总数
+     */
+    public static int warmUp(int connectionsPerRoute, String... urls) {
+        int opened = 0;
+        for (String url : urls) {
+            opened += get(url).warmUp(connectionsPerRoute);
+        }
+        return opened;
+    }
+
+    /**
+     * 添加全局的请求监听器, 每个同步执行的请求结束后回调
+     *
+     * @param listener 请求监听器
+     * @see HttpClientRequest#setRequestListener(RequestListener)
+     */
+    public static void addRequestListener(RequestListener listener) {
+        HttpClientPool.addListener(listener);
+    }
+
+    /**
+     * 移除全局的请求监听器
+     *
+     * @param listener 请求监听器
+     */
+    public static void removeRequestListener(RequestListener listener) {
+        HttpClientPool.removeListener(listener);
+    }
+
+    /**
+     * 所有共享连接池的连接统计之和, 可用于发现连接池耗尽 ( 等待连接数持续大于0 )
+     *
+     * @return 借出的、等待连接的、空闲的连接数和最大连接数
+     */
+    public static PoolStats getPoolStats() {
+        return HttpClientPool.getPoolStats();
+    }
+
+    /**
+     * 设置全局默认的传输协议, 默认 HTTP/1.1; 使用 HTTP/2 时需要自行引入 httpclient5 依赖,
+     * 设置了代理或自定义的 SSL 连接工厂的请求仍以 HTTP/1.1 执行
+     *
+     * @param transport 传输协议
+     * @see HttpClientRequest#setTransport(HttpTransport)
+     */
+    public static void setDefaultTransport(HttpTransport transport) {
+        HttpClientPool.setDefaultTransport(transport);
+    }
+
+    /**
+     * 设置 HTTP/2 连接参数, 默认每个连接最多100个并发流、每个流的初始流量控制窗口为64KB; 并发流数量在客户端限制,
+     * 超出的请求排队等待先前的流结束, 立即生效 ( 服务端声明的限制更小时以服务端为准 ); 流量控制窗口只作用于之后创建的客户端
+     * ( 可先调用 {@link #shutdown()} )
+     *
+     * @param maxConcurrentStreams 每个连接上客户端发起的最大并发流数量
+     * @param initialWindowSize    每个流的初始流量控制窗口大小, 单位字节
+     */
+    public static void setHttp2Config(int maxConcurrentStreams, int initialWindowSize) {
+        Http2Transport.setConfig(maxConcurrentStreams, initialWindowSize);
+    }
+
+    /**
+     * 关闭所有共享的 HTTP 客户端并释放连接, 之后的请求会重新创建客户端
+     */
+    public static void shutdown() {
+        HttpClientPool.shutdown();
+    }
+
 }
\ No newline at end of file
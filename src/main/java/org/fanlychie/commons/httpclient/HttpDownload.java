@@ -0,0 +1,524 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 分段并行下载. 先以 Range: bytes=0-0 探测服务端是否支持范围请求以及资源的总长度, 支持时预先分配文件,
+ * 再以多个连接并行下载各个分段, 每个分段按偏移量直接写入文件的对应位置; 不支持时退化为单个连接顺序下载.
+ * <p>
+ * 已完成的分段记录在目标文件旁的 .download 状态文件中, 下载失败后再次执行时跳过已完成的分段; 资源的 ETag 或
+ * Last-Modified 作为 If-Range 条件发送, 资源已变化时丢弃已下载的内容, 两者都没有时总是重新下载. 全部完成后删除状态文件
+ */
+public class HttpDownload {
+
+    /**
+     * 状态文件的后缀
+     */
+    private static final String STATE_SUFFIX = ".download";
+
+    /**
+     * 读取响应内容的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 创建请求, 每个分段的每次尝试都创建一个新的请求
+     */
+    private final Supplier<? extends HttpClientRequest> requestFactory;
+
+    /**
+     * 目标文件
+     */
+    private final Path target;
+
+    /**
+     * 并行下载的连接数
+     */
+    private int parallelism = 4;
+
+    /**
+     * 分段的字节数
+     */
+    private long chunkSize = 8 * 1024 * 1024;
+
+    /**
+     * 单个分段失败后的重试次数
+     */
+    private int retries = 3;
+
+    /**
+     * 分段摘要的算法
+     */
+    private String checksumAlgorithm;
+
+    /**
+     * 分段的校验器
+     */
+    private ChunkVerifier verifier;
+
+    /**
+     * 创建分段下载
+     *
+     * @param requestFactory 创建请求, 每次调用返回一个新的 GET 请求
+     * @param target         目标文件
+     */
+    public HttpDownload(Supplier<? extends HttpClientRequest> requestFactory, Path target) {
+        this.requestFactory = requestFactory;
+        this.target = target;
+    }
+
+    /**
+     * 设置并行下载的连接数, 默认为4
+     *
+     * @param parallelism 连接数
+     * @return HttpDownload
+     */
+    public HttpDownload setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 设置分段的字节数, 默认为8MB; 续传时必须与之前的下载一致, 否则重新下载
+     *
+     * @param chunkSize 字节数
+     * @return HttpDownload
+     */
+    public HttpDownload setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 设置单个分段失败后的重试次数, 默认为3; 重试时从该分段已写入的位置继续
+     *
+     * @param retries 重试次数
+     * @return HttpDownload
+     */
+    public HttpDownload setRetries(int retries) {
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * 设置分段校验, 每个分段下载完成后计算其内容的摘要并交给校验器, 不通过时重新下载该分段
+     *
+     * @param algorithm 摘要算法, 如 MD5、SHA-256
+     * @param verifier  校验器
+     * @return HttpDownload
+     */
+    public HttpDownload setChecksum(String algorithm, ChunkVerifier verifier) {
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeCastException(e);
+        }
+        this.checksumAlgorithm = algorithm;
+        this.verifier = verifier;
+        return this;
+    }
+
+    /**
+     * 执行下载, 任一分段重试后仍失败时停止其余分段并抛出异常, 保留已完成的分段以便再次执行时续传
+     *
+     * @return 文件的字节数
+     */
+    public long execute() {
+        Probe probe = probe();
+        if (probe.length < 0) {
+            // 不支持范围请求, 已在探测时顺序下载完成
+            return probe.written;
+        }
+        Path stateFile = target.resolveSibling(target.getFileName() + STATE_SUFFIX);
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DownloadState state = DownloadState.open(stateFile, probe.length, chunkSize, probe.validator);
+            // 没有 ETag 和 Last-Modified 时无法确认资源未变化, 不续传
+            if (probe.validator == null || state.completed.isEmpty() || file.size() != probe.length) {
+                // 重新开始, 预先分配文件
+                state = DownloadState.create(stateFile, probe.length, chunkSize, probe.validator);
+                file.truncate(0);
+                if (probe.length > 0) {
+                    file.write(ByteBuffer.allocate(1), probe.length - 1);
+                }
+            }
+            int chunks = (int) ((probe.length + chunkSize - 1) / chunkSize);
+            Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < chunks; i++) {
+                if (!state.completed.contains(i)) {
+                    pending.add(i);
+                }
+            }
+            int workers = Math.min(parallelism, pending.size());
+            HttpClientPool.ensureCapacity(workers);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            DownloadState current = state;
+            List<CompletableFuture<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(HttpClientExecutor.submit(() -> {
+                    Integer index;
+                    // 任一分段失败后不再取新的分段
+                    while (failure.get() == null && (index = pending.poll()) != null) {
+                        try {
+                            downloadChunk(file, index, probe);
+                            // 分段内容落盘后再记为完成
+                            file.force(false);
+                            current.complete(index);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            Throwable e = failure.get();
+            if (e != null) {
+                if (unwrap(e) instanceof ResourceChangedException) {
+                    // 资源已变化, 已下载的分段不能再续传
+                    Files.deleteIfExists(stateFile);
+                }
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeCastException(e);
+            }
+            file.force(true);
+            Files.deleteIfExists(stateFile);
+            return probe.length;
+        } catch (IOException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 探测服务端是否支持范围请求; 不支持时服务端返回完整的内容, 直接顺序写入目标文件
+     *
+     * @return Probe
+     */
+    private Probe probe() {
+        Probe probe = new Probe();
+        HttpClientRequest request = requestFactory.get()
+                .addHeader("Range", "bytes=0-0")
+                .setResponseCompression(false)
+                .setResponseObserver(response -> {
+                    probe.contentRange = header(response, "Content-Range");
+                    probe.validator = validator(response);
+                });
+        request.executeForStream((statusCode, in) -> {
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT && probe.contentRange != null) {
+                // Content-Range: bytes 0-0/总长度
+                String total = probe.contentRange.substring(probe.contentRange.lastIndexOf('/') + 1).trim();
+                if (!"*".equals(total)) {
+                    probe.length = Long.parseLong(total);
+                    return null;
+                }
+            }
+            if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                // 空的资源
+                Files.write(target, new byte[0]);
+                return null;
+            }
+            if (statusCode != HttpStatus.SC_OK) {
+                throw new HttpResponseException(statusCode, "HTTP " + statusCode);
+            }
+            try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                probe.written = write(file, in, 0, Long.MAX_VALUE, null, null);
+                file.force(true);
+            }
+            return null;
+        });
+        return probe;
+    }
+
+    /**
+     * 下载一个分段, 失败时从已写入的位置继续, 校验不通过时重新下载整个分段
+     *
+     * @param file  目标文件
+     * @param index 分段的序号
+     * @param probe 探测结果
+     * @throws Exception
+     */
+    private void downloadChunk(FileChannel file, int index, Probe probe) throws Exception {
+        long start = index * chunkSize;
+        long end = Math.min(start + chunkSize, probe.length);
+        MessageDigest digest = checksumAlgorithm != null ? MessageDigest.getInstance(checksumAlgorithm) : null;
+        long[] position = {start};
+        int attempts = 0;
+        while (true) {
+            try {
+                fetch(file, position, end, probe.validator, digest);
+                if (digest == null || verifier.verify(index, start, end - start, digest.digest())) {
+                    return;
+                }
+                if (attempts++ >= retries) {
+                    throw new IOException("checksum mismatch for chunk " + index);
+                }
+                // 校验不通过, 重新下载整个分段
+                position[0] = start;
+            } catch (Exception e) {
+                if (unwrap(e) instanceof ResourceChangedException || attempts++ >= retries) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 请求分段中从当前位置到结束位置的内容, 写入文件并更新摘要
+     *
+     * @param file      目标文件
+     * @param position  当前位置, 写入过程中随之更新
+     * @param end       结束位置 ( 不包括 )
+     * @param validator If-Range 条件
+     * @param digest    摘要, 不校验时为 null
+     */
+    private void fetch(FileChannel file, long[] position, long end, String validator, MessageDigest digest) {
+        long from = position[0];
+        String[] contentRange = new String[1];
+        HttpClientRequest request = requestFactory.get()
+                .addHeader("Range", "bytes=" + from + "-" + (end - 1))
+                .setResponseCompression(false)
+                .setResponseObserver(response -> contentRange[0] = header(response, "Content-Range"));
+        if (validator != null) {
+            request.addHeader("If-Range", validator);
+        }
+        request.executeForStream((statusCode, in) -> {
+            if (statusCode == HttpStatus.SC_OK) {
+                // If-Range 条件不成立, 服务端返回了完整的新内容
+                throw new ResourceChangedException("If-Range not satisfied at " + from);
+            }
+            if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new HttpResponseException(statusCode, "HTTP " + statusCode);
+            }
+            if (contentRange[0] == null || !contentRange[0].trim().startsWith("bytes " + from + "-")) {
+                throw new IOException("unexpected Content-Range: " + contentRange[0]);
+            }
+            write(file, in, from, end, digest, position);
+            if (position[0] < end) {
+                throw new IOException("premature end of chunk at " + position[0] + ", expected " + end);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 将输入流的内容按位置写入文件
+     *
+     * @param file     目标文件
+     * @param in       输入流
+     * @param from     起始位置
+     * @param end      结束位置 ( 不包括 )
+     * @param digest   摘要, 为 null 时不计算
+     * @param position 当前位置, 每写入一块即更新, 为 null 时不更新
+     * @return 写入的字节数
+     * @throws IOException
+     */
+    private static long write(FileChannel file, InputStream in, long from, long end, MessageDigest digest,
+                              long[] position) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long pos = from;
+        int n;
+        while (pos < end && (n = in.read(buffer, 0, (int) Math.min(buffer.length, end - pos))) != -1) {
+            byteBuffer.clear().limit(n);
+            long p = pos;
+            while (byteBuffer.hasRemaining()) {
+                p += file.write(byteBuffer, p);
+            }
+            if (digest != null) {
+                digest.update(buffer, 0, n);
+            }
+            pos = p;
+            if (position != null) {
+                position[0] = pos;
+            }
+        }
+        return pos - from;
+    }
+
+    /**
+     * 资源的校验值, 优先使用强 ETag, 其次 Last-Modified
+     *
+     * @param response 响应
+     * @return 校验值, 都没有时为 null
+     */
+    private static String validator(HttpResponse response) {
+        String etag = header(response, "ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return header(response, "Last-Modified");
+    }
+
+    /**
+     * 响应头的值
+     *
+     * @param response 响应
+     * @param name     响应头的名称
+     * @return 值, 没有时为 null
+     */
+    private static String header(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * 取出包装在 {@link RuntimeCastException} 中的真实异常
+     *
+     * @param e 异常
+     * @return 真实异常
+     */
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof RuntimeCastException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * 探测结果
+     */
+    private static final class Probe {
+
+        /**
+         * 资源的总长度, 不支持范围请求时为 -1
+         */
+        private long length = -1;
+
+        /**
+         * 不支持范围请求时顺序写入的字节数
+         */
+        private long written;
+
+        /**
+         * Content-Range 响应头
+         */
+        private String contentRange;
+
+        /**
+         * If-Range 条件
+         */
+        private String validator;
+
+    }
+
+    /**
+     * 下载状态, 首行为资源的总长度、分段的字节数和校验值, 其后每行为一个已完成的分段序号
+     */
+    private static final class DownloadState {
+
+        /**
+         * 状态文件
+         */
+        private final Path path;
+
+        /**
+         * 已完成的分段
+         */
+        private final Set<Integer> completed;
+
+        private DownloadState(Path path, Set<Integer> completed) {
+            this.path = path;
+            this.completed = completed;
+        }
+
+        /**
+         * 读取状态文件, 不存在或与当前资源不一致时返回没有已完成分段的状态
+         *
+         * @param path      状态文件
+         * @param length    资源的总长度
+         * @param chunkSize 分段的字节数
+         * @param validator 资源的校验值
+         * @return DownloadState
+         * @throws IOException
+         */
+        static DownloadState open(Path path, long length, long chunkSize, String validator) throws IOException {
+            Set<Integer> completed = new HashSet<>();
+            if (Files.exists(path)) {
+                List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+                if (!lines.isEmpty() && lines.get(0).equals(header(length, chunkSize, validator))) {
+                    for (int i = 1; i < lines.size(); i++) {
+                        String line = lines.get(i).trim();
+                        // 中断时可能留下不完整的一行
+                        if (!line.isEmpty() && line.chars().allMatch(Character::isDigit)) {
+                            completed.add(Integer.parseInt(line));
+                        }
+                    }
+                }
+            }
+            return new DownloadState(path, completed);
+        }
+
+        /**
+         * 创建新的状态文件, 覆盖旧的
+         *
+         * @param path      状态文件
+         * @param length    资源的总长度
+         * @param chunkSize 分段的字节数
+         * @param validator 资源的校验值
+         * @return DownloadState
+         * @throws IOException
+         */
+        static DownloadState create(Path path, long length, long chunkSize, String validator) throws IOException {
+            Files.write(path, (header(length, chunkSize, validator) + "\n").getBytes(StandardCharsets.UTF_8));
+            return new DownloadState(path, new HashSet<>());
+        }
+
+        /**
+         * 记录一个已完成的分段
+         *
+         * @param index 分段的序号
+         * @throws IOException
+         */
+        synchronized void complete(int index) throws IOException {
+            Files.write(path, (index + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            completed.add(index);
+        }
+
+        private static String header(long length, long chunkSize, String validator) {
+            return length + " " + chunkSize + " " + (validator != null ? validator : "-");
+        }
+
+    }
+
+    /**
+     * 资源在下载过程中已变化
+     */
+    private static final class ResourceChangedException extends IOException {
+
+        ResourceChangedException(String message) {
+            super("resource changed: " + message);
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package org.fanlychie.commons.httpclient;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 逻辑服务中的一个后端地址, 记录进行中的请求数、指数加权的平均耗时和连续失败次数, 供负载均衡策略和异常剔除使用
+ */
+public class HttpEndpoint {
+
+    /**
+     * 平均耗时的衰减时间常数, 单位纳秒, 10秒前的耗时权重衰减为 1/e
+     */
+    private static final double DECAY_TIME = 10e9;
+
+    /**
+     * 基础地址, 如 http://10.0.0.1:8080
+     */
+    private final String baseUrl;
+
+    /**
+     * 进行中的请求数
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * 指数加权的平均耗时, 单位纳秒
+     */
+    private double latency;
+
+    /**
+     * 上次更新平均耗时的时间, 单位纳秒
+     */
+    private long lastUpdateTime = System.nanoTime();
+
+    /**
+     * 连续失败次数
+     */
+    private int consecutiveFailures;
+
+    /**
+     * 被剔除的次数, 最多记为10次, 剔除结束后每健康一个基础剔除时间减1次
+     */
+    private int ejections;
+
+    /**
+     * 剔除结束的时间, 单位毫秒
+     */
+    private volatile long ejectedUntil;
+
+    /**
+     * 创建后端地址
+     *
+     * @param baseUrl 基础地址
+     */
+    HttpEndpoint(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * 基础地址
+     *
+     * @return 基础地址, 不以 / 结尾
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * 进行中的请求数
+     *
+     * @return 请求数
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 指数加权的平均耗时
+     *
+     * @return 平均耗时, 单位毫秒, 还没有请求时为0
+     */
+    public synchronized double getLatency() {
+        return latency / 1e6;
+    }
+
+    /**
+     * 当前是否被剔除
+     *
+     * @return 被剔除时返回 true
+     */
+    public boolean isEjected() {
+        return System.currentTimeMillis() < ejectedUntil;
+    }
+
+    /**
+     * 记录请求开始
+     */
+    void start() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * 记录请求完成, 连续失败次数达到阈值时剔除, 剔除时间随剔除次数线性增加; 剔除结束后健康的时间越长, 剔除次数越少
+     *
+     * @param duration         请求耗时, 单位纳秒
+     * @param failure          是否失败
+     * @param maxFailures      剔除前允许的连续失败次数, 小于1时不剔除
+     * @param baseEjectionTime 基础剔除时间, 单位毫秒
+     */
+    void complete(long duration, boolean failure, int maxFailures, long baseEjectionTime) {
+        outstanding.decrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (latency == 0) {
+                latency = duration;
+            } else {
+                double weight = Math.exp(-(now - lastUpdateTime) / DECAY_TIME);
+                latency = latency * weight + duration * (1 - weight);
+            }
+            lastUpdateTime = now;
+            if (!failure) {
+                consecutiveFailures = 0;
+                long millis = System.currentTimeMillis();
+                // 剔除结束后一个基础剔除时间内没有再被剔除, 剔除次数减1, 从现在起重新计时
+                if (ejections > 0 && millis - ejectedUntil >= baseEjectionTime) {
+                    ejections--;
+                    ejectedUntil = millis;
+                }
+                return;
+            }
+            if (maxFailures > 0 && ++consecutiveFailures >= maxFailures) {
+                consecutiveFailures = 0;
+                ejections = Math.min(ejections + 1, 10);
+                ejectedUntil = System.currentTimeMillis() + baseEjectionTime * ejections;
+            }
+        }
+    }
+
+    /**
+     * 按平均耗时和进行中的请求数估算的负载, 还没有请求时视为负载最低
+     *
+     * @return 负载
+     */
+    double getCost() {
+        return getLatency() * (getOutstanding() + 1);
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl + " [outstanding: " + getOutstanding() + ", latency: " + getLatency() + "ms, ejected: " + isEjected() + "]";
+    }
+
+}
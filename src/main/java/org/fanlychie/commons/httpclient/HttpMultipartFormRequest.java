@@ -1,17 +1,13 @@
 package org.fanlychie.commons.httpclient;
 
-import org.apache.http.Consts;
-import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.entity.mime.content.InputStreamBody;
-import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.entity.ContentType;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  * HTTP 支持文件上传的表单请求
@@ -20,9 +16,19 @@ import java.io.InputStream;
 public class HttpMultipartFormRequest extends HttpClientRequest {
 
     /**
-     * 实体构建器
+     * 表单实体
      */
-    private MultipartEntityBuilder builder;
+    private MultipartEntity entity;
+
+    /**
+     * 请求内容的压缩方式 ( gzip 或 deflate ), 为 null 时不压缩
+     */
+    private String requestCompression;
+
+    /**
+     * 请求内容的压缩阈值, 长度已知且小于该值的请求内容不压缩
+     */
+    private int requestCompressionThreshold;
 
     /**
      * 创建一个支持文件上传表单的 HTTP 客户端请求
@@ -31,9 +37,18 @@ public class HttpMultipartFormRequest extends HttpClientRequest {
      */
     public HttpMultipartFormRequest(HttpRequestBase request) {
         super(request);
-        this.builder = MultipartEntityBuilder.create()
-                .setCharset(Consts.UTF_8)
-                .setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
+        this.entity = new MultipartEntity();
+    }
+
+    /**
+     * 文件上传使用单独的连接池, 明文连接由套接字通道支持, 文件内容由 transferTo 直接发送;
+     * 上传中的线程被中断时连接以 ClosedByInterruptException 关闭
+     *
+     * @return true
+     */
+    @Override
+    boolean usesSocketChannel() {
+        return true;
     }
 
     /**
@@ -44,7 +59,65 @@ public class HttpMultipartFormRequest extends HttpClientRequest {
      * @return HttpMultipartFormRequest
      */
     public HttpMultipartFormRequest addParameter(String name, File file) {
-        builder.addPart(name, new FileBody(file));
+        return addParameter(name, file.toPath());
+    }
+
+    /**
+     * 添加文件参数, 明文连接上文件内容由 FileChannel.transferTo 直接发送, 不经过用户态的缓冲区
+     *
+     * @param name 参数名称
+     * @param path 文件路径
+     * @return HttpMultipartFormRequest
+     */
+    public HttpMultipartFormRequest addParameter(String name, Path path) {
+        entity.addFile(name, path.getFileName().toString(), null, path, 0, -1);
+        return this;
+    }
+
+    /**
+     * 添加文件参数
+     *
+     * @param name        参数名称
+     * @param path        文件路径
+     * @param filename    文件名称
+     * @param contentType 内容类型
+     * @return HttpMultipartFormRequest
+     */
+    public HttpMultipartFormRequest addParameter(String name, Path path, String filename, ContentType contentType) {
+        entity.addFile(name, filename, contentType, path, 0, -1);
+        return this;
+    }
+
+    /**
+     * 添加文件的一个区间作为参数, 用于分片上传大文件; 明文连接上由 FileChannel.transferTo 直接发送,
+     * 其他情况下较大的区间按分片内存映射后写出
+     *
+     * @param name     参数名称
+     * @param path     文件路径
+     * @param filename 文件名称
+     * @param position 区间的起始位置
+     * @param length   区间的长度
+     * @return HttpMultipartFormRequest
+     */
+    public HttpMultipartFormRequest addParameter(String name, Path path, String filename, long position, long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative: " + length);
+        }
+        entity.addFile(name, filename, null, path, position, length);
+        return this;
+    }
+
+    /**
+     * 添加 ByteBuffer 参数, 发送 position 到 limit 之间的内容, 不复制内容也不修改 ByteBuffer 的位置,
+     * 发送完成前不能修改其内容; 直接缓冲区在明文连接上直接写入套接字通道
+     *
+     * @param name     参数名称
+     * @param buffer   内容
+     * @param filename 文件名称
+     * @return HttpMultipartFormRequest
+     */
+    public HttpMultipartFormRequest addParameter(String name, ByteBuffer buffer, String filename) {
+        entity.addBuffer(name, filename, null, buffer);
         return this;
     }
 
@@ -56,12 +129,12 @@ public class HttpMultipartFormRequest extends HttpClientRequest {
      * @return HttpMultipartFormRequest
      */
     public HttpMultipartFormRequest addParameter(String name, String value) {
-        builder.addPart(name, new StringBody(value, ContentTypeConstant.TEXT_HTML));
+        entity.addText(name, value);
         return this;
     }
 
     /**
-     * 添加请求参数
+     * 添加请求参数, 输入流的长度未知, 整个表单以分块传输编码发送
      *
      * @param name     参数的名称
      * @param in       输入流参数
@@ -69,7 +142,34 @@ public class HttpMultipartFormRequest extends HttpClientRequest {
      * @return HttpMultipartFormRequest
      */
     public HttpMultipartFormRequest addParameter(String name, InputStream in, String filename) {
-        builder.addPart(name, new InputStreamBody(in, filename));
+        entity.addStream(name, filename, null, in, -1);
+        return this;
+    }
+
+    /**
+     * 添加长度已知的输入流参数, 表单以精确的 Content-Length 发送; 输入流提供的内容必须不少于给定的长度
+     *
+     * @param name     参数的名称
+     * @param in       输入流参数
+     * @param length   内容长度
+     * @param filename 文件名称参数
+     * @return HttpMultipartFormRequest
+     */
+    public HttpMultipartFormRequest addParameter(String name, InputStream in, long length, String filename) {
+        entity.addStream(name, filename, null, in, length);
+        return this;
+    }
+
+    /**
+     * 设置请求内容的压缩方式, 请求内容在发送时以流的方式压缩; 需要服务器端支持解压相应 Content-Encoding 的请求内容
+     *
+     * @param contentEncoding 压缩方式, gzip 或 deflate, 为 null 时不压缩
+     * @param threshold       压缩阈值, 单位字节, 长度已知且小于该值的请求内容不压缩
+     * @return HttpMultipartFormRequest
+     */
+    public HttpMultipartFormRequest setRequestCompression(String contentEncoding, int threshold) {
+        this.requestCompression = CompressingEntity.checkContentEncoding(contentEncoding);
+        this.requestCompressionThreshold = threshold;
         return this;
     }
 
@@ -81,13 +181,12 @@ public class HttpMultipartFormRequest extends HttpClientRequest {
      */
     @Override
     protected void preHandle(HttpRequestBase request) throws Exception {
-        HttpEntity entity = builder.build();
         if (log.isDebugEnabled()) {
-            log.debug(request + " " + entity.getContentType());
-        }
-        if (entity.getContentLength() > 0) {
-            ((HttpEntityEnclosingRequestBase) request).setEntity(entity);
+            log.debug(request + " " + entity.getContentType() + ", contentLength: " + entity.getContentLength());
         }
+        // 长度未知 ( 含有长度未知的输入流 ) 时以分块传输编码发送, 不能丢弃
+        ((HttpEntityEnclosingRequestBase) request).setEntity(
+                CompressingEntity.compress(entity, requestCompression, requestCompressionThreshold));
     }
 
 }
\ No newline at end of file
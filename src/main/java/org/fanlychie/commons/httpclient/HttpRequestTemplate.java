@@ -0,0 +1,305 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.message.BufferedHeader;
+import org.apache.http.util.CharArrayBuffer;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 不可变的请求模板, 用于形状固定的重复调用. 固定的请求头预先格式化为发送时的形式, 地址按路径变量 ( 如 {id} )
+ * 预先拆分, 固定的查询参数和表单参数预先编码; 每次调用只需填入变化的部分. 模板是线程安全的, 可以保存为常量共享,
+ * with 开头的方法返回新的模板, 不修改原模板
+ * <pre>
+ * static final HttpRequestTemplate GET_USER = HttpRequestTemplate.get("http://api/users/{id}")
+ *         .withHeader("Authorization", "Bearer token")
+ *         .withParameter("fields", "name,email");
+ *
+ * HttpResult result = GET_USER.request().setPathVariable("id", "42").execute();
+ * </pre>
+ */
+public final class HttpRequestTemplate {
+
+    /**
+     * 请求方法
+     */
+    private final String method;
+
+    /**
+     * 地址中路径变量之间的固定部分, 比路径变量多一个
+     */
+    private final String[] segments;
+
+    /**
+     * 路径变量的名称
+     */
+    private final String[] variables;
+
+    /**
+     * 预先编码的查询参数, 不含 ? , 没有时为空字符串
+     */
+    private final String query;
+
+    /**
+     * 预先编码的表单参数, 没有时为空数组
+     */
+    private final byte[] form;
+
+    /**
+     * 预先格式化的请求头
+     */
+    private final Header[] headers;
+
+    /**
+     * 创建请求模板
+     *
+     * @param method    请求方法
+     * @param segments  地址中路径变量之间的固定部分
+     * @param variables 路径变量的名称
+     * @param query     预先编码的查询参数
+     * @param form      预先编码的表单参数
+     * @param headers   预先格式化的请求头
+     */
+    private HttpRequestTemplate(String method, String[] segments, String[] variables, String query, byte[] form,
+                                Header[] headers) {
+        this.method = method;
+        this.segments = segments;
+        this.variables = variables;
+        this.query = query;
+        this.form = form;
+        this.headers = headers;
+    }
+
+    /**
+     * 创建 GET 请求模板
+     *
+     * @param url 请求地址, 可以包含路径变量 {name} 和已编码的查询参数
+     * @return HttpRequestTemplate
+     */
+    public static HttpRequestTemplate get(String url) {
+        return create(HttpGet.METHOD_NAME, url);
+    }
+
+    /**
+     * 创建 POST 请求模板, 参数以 application/x-www-form-urlencoded 表单发送
+     *
+     * @param url 请求地址, 可以包含路径变量 {name} 和已编码的查询参数
+     * @return HttpRequestTemplate
+     */
+    public static HttpRequestTemplate post(String url) {
+        return create(HttpPost.METHOD_NAME, url);
+    }
+
+    /**
+     * 创建 PUT 请求模板, 参数以 application/x-www-form-urlencoded 表单发送
+     *
+     * @param url 请求地址, 可以包含路径变量 {name} 和已编码的查询参数
+     * @return HttpRequestTemplate
+     */
+    public static HttpRequestTemplate put(String url) {
+        return create(HttpPut.METHOD_NAME, url);
+    }
+
+    /**
+     * 创建 DELETE 请求模板
+     *
+     * @param url 请求地址, 可以包含路径变量 {name} 和已编码的查询参数
+     * @return HttpRequestTemplate
+     */
+    public static HttpRequestTemplate delete(String url) {
+        return create(HttpDelete.METHOD_NAME, url);
+    }
+
+    /**
+     * 解析请求地址, 创建请求模板
+     *
+     * @param method 请求方法
+     * @param url    请求地址
+     * @return HttpRequestTemplate
+     */
+    private static HttpRequestTemplate create(String method, String url) {
+        int queryIndex = url.indexOf('?');
+        String path = queryIndex < 0 ? url : url.substring(0, queryIndex);
+        String query = queryIndex < 0 ? "" : url.substring(queryIndex + 1);
+        List<String> segments = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = path.indexOf('{', start)) >= 0) {
+            int close = path.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("unclosed path variable: " + url);
+            }
+            segments.add(path.substring(start, open));
+            variables.add(path.substring(open + 1, close));
+            start = close + 1;
+        }
+        segments.add(path.substring(start));
+        return new HttpRequestTemplate(method, segments.toArray(new String[0]), variables.toArray(new String[0]),
+                query, new byte[0], new Header[0]);
+    }
+
+    /**
+     * 添加固定的请求头, 请求头预先格式化, 发送时不再格式化
+     *
+     * @param name  请求头名称
+     * @param value 请求头的值
+     * @return 新的请求模板
+     */
+    public HttpRequestTemplate withHeader(String name, String value) {
+        CharArrayBuffer buffer = new CharArrayBuffer(name.length() + 2 + value.length());
+        buffer.append(name);
+        buffer.append(": ");
+        buffer.append(value);
+        Header[] newHeaders = Arrays.copyOf(headers, headers.length + 1);
+        try {
+            newHeaders[headers.length] = new BufferedHeader(buffer);
+        } catch (org.apache.http.ParseException e) {
+            throw new RuntimeCastException(e);
+        }
+        return new HttpRequestTemplate(method, segments, variables, query, form, newHeaders);
+    }
+
+    /**
+     * 添加固定的请求参数, 参数预先编码; GET 和 DELETE 请求的参数添加到查询参数, POST 和 PUT 请求的参数添加到表单
+     *
+     * @param name  参数名称
+     * @param value 参数的值
+     * @return 新的请求模板
+     */
+    public HttpRequestTemplate withParameter(String name, String value) {
+        if (hasForm()) {
+            byte[] pair = encodeParameter(form.length > 0, name, value).getBytes(StandardCharsets.US_ASCII);
+            byte[] newForm = Arrays.copyOf(form, form.length + pair.length);
+            System.arraycopy(pair, 0, newForm, form.length, pair.length);
+            return new HttpRequestTemplate(method, segments, variables, query, newForm, headers);
+        }
+        String newQuery = query + encodeParameter(!query.isEmpty(), name, value);
+        return new HttpRequestTemplate(method, segments, variables, newQuery, form, headers);
+    }
+
+    /**
+     * 添加固定的查询参数, POST 和 PUT 请求也添加到地址中
+     *
+     * @param name  参数名称
+     * @param value 参数的值
+     * @return 新的请求模板
+     */
+    public HttpRequestTemplate withQueryParameter(String name, String value) {
+        String newQuery = query + encodeParameter(!query.isEmpty(), name, value);
+        return new HttpRequestTemplate(method, segments, variables, newQuery, form, headers);
+    }
+
+    /**
+     * 按模板创建一次调用的请求, 请求只能执行一次
+     *
+     * @return HttpTemplateRequest
+     */
+    public HttpTemplateRequest request() {
+        HttpRequestBase request;
+        switch (method) {
+            case HttpPost.METHOD_NAME:
+                request = new HttpPost();
+                break;
+            case HttpPut.METHOD_NAME:
+                request = new HttpPut();
+                break;
+            case HttpDelete.METHOD_NAME:
+                request = new HttpDelete();
+                break;
+            default:
+                request = new HttpGet();
+        }
+        request.setHeaders(headers);
+        return new HttpTemplateRequest(request, this);
+    }
+
+    /**
+     * 请求方法
+     *
+     * @return 请求方法
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * 参数是否以表单发送
+     *
+     * @return POST 和 PUT 请求返回 true
+     */
+    boolean hasForm() {
+        return HttpPost.METHOD_NAME.equals(method) || HttpPut.METHOD_NAME.equals(method);
+    }
+
+    /**
+     * 地址中路径变量之间的固定部分
+     *
+     * @return 比路径变量多一个
+     */
+    String[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * 路径变量的名称
+     *
+     * @return 名称
+     */
+    String[] getVariables() {
+        return variables;
+    }
+
+    /**
+     * 预先编码的查询参数
+     *
+     * @return 查询参数, 没有时为空字符串
+     */
+    String getQuery() {
+        return query;
+    }
+
+    /**
+     * 预先编码的表单参数
+     *
+     * @return 表单参数, 调用方不可修改
+     */
+    byte[] getForm() {
+        return form;
+    }
+
+    /**
+     * 编码一个参数
+     *
+     * @param separator 是否在前面加上 &amp;
+     * @param name      参数名称
+     * @param value     参数的值
+     * @return name=value
+     */
+    static String encodeParameter(boolean separator, String name, String value) {
+        String pair = UrlEncoder.encode(name) + "=" + UrlEncoder.encode(value);
+        return separator ? "&" + pair : pair;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(method).append(' ').append(segments[0]);
+        for (int i = 0; i < variables.length; i++) {
+            builder.append('{').append(variables[i]).append('}').append(segments[i + 1]);
+        }
+        if (!query.isEmpty()) {
+            builder.append('?').append(query);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.fanlychie.commons.httpclient;
+
+/**
+ * HTTP 请求结果
+ */
+public class HttpResult {
+
+    /**
+     * 请求结果的状态码
+     */
+    private final int statusCode;
+
+    /**
+     * 请求结果的文本内容
+     */
+    private final String responseText;
+
+    /**
+     * 创建一个 HTTP 请求结果
+     *
+     * @param statusCode   状态码
+     * @param responseText 文本内容
+     */
+    public HttpResult(int statusCode, String responseText) {
+        this.statusCode = statusCode;
+        this.responseText = responseText;
+    }
+
+    /**
+     * 请求结果的状态码
+     *
+     * @return 状态码
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 请求结果的文本内容
+     *
+     * @return 文本内容
+     */
+    public String getResponseText() {
+        return responseText;
+    }
+
+    @Override
+    public String toString() {
+        return "statusCode: " + statusCode + ", responseText: " + responseText;
+    }
+
+}
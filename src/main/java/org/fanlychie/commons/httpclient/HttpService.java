@@ -0,0 +1,407 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 逻辑服务, 由一组后端地址组成, 请求在客户端按负载均衡策略分发到各个后端地址, 不需要经过代理转发;
+ * 连续失败的后端地址被暂时剔除. 后端地址可以固定, 也可以定时从文件或 DNS 刷新
+ */
+public class HttpService {
+
+    /**
+     * 定时刷新后端地址的线程
+     */
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "http-service-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 后端地址
+     */
+    private volatile List<HttpEndpoint> endpoints = Collections.emptyList();
+
+    /**
+     * 负载均衡策略, 默认平均耗时优先
+     */
+    private LoadBalanceStrategy strategy = LoadBalanceStrategy.latencyEwma();
+
+    /**
+     * 剔除前允许的连续失败次数, 默认5次
+     */
+    private int maxFailures = 5;
+
+    /**
+     * 基础剔除时间, 单位毫秒, 默认30秒
+     */
+    private long baseEjectionTime = 30 * 1000;
+
+    /**
+     * 同时被剔除的后端地址的最大比例, 百分比, 默认50
+     */
+    private int maxEjectionPercent = 50;
+
+    /**
+     * 定时刷新的任务
+     */
+    private ScheduledFuture<?> refreshTask;
+
+    /**
+     * 请求头 Host 的值, 从 DNS 解析后端地址时为原来的主机名, 否则为 null
+     */
+    private String host;
+
+    /**
+     * 创建逻辑服务
+     *
+     * @param baseUrls 后端的基础地址, 如 http://10.0.0.1:8080
+     */
+    public HttpService(String... baseUrls) {
+        this(Arrays.asList(baseUrls));
+    }
+
+    /**
+     * 创建逻辑服务
+     *
+     * @param baseUrls 后端的基础地址, 如 http://10.0.0.1:8080
+     */
+    public HttpService(List<String> baseUrls) {
+        setEndpoints(baseUrls);
+    }
+
+    /**
+     * 创建从文件读取后端地址的逻辑服务, 文件每行一个基础地址, 空行和 # 开头的行被忽略; 文件修改后定时重新读取
+     *
+     * @param file            文件路径
+     * @param refreshInterval 检查文件修改的间隔, 单位毫秒
+     * @return HttpService
+     */
+    public static HttpService fromFile(Path file, long refreshInterval) {
+        HttpService service = new HttpService(readFile(file));
+        long[] lastModified = {lastModified(file)};
+        service.refreshTask = REFRESHER.scheduleWithFixedDelay(() -> {
+            long modified = lastModified(file);
+            if (modified != lastModified[0]) {
+                lastModified[0] = modified;
+                service.refresh(() -> readFile(file));
+            }
+        }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        return service;
+    }
+
+    /**
+     * 创建从 DNS 解析后端地址的逻辑服务, 主机名解析出的每个 IP 地址作为一个后端地址, 定时重新解析;
+     * 请求直接发往 IP 地址, 请求头 Host 仍为原来的主机名, 适合 http 服务
+     *
+     * @param baseUrl         基础地址, 如 http://service.local:8080
+     * @param refreshInterval 重新解析的间隔, 单位毫秒
+     * @return HttpService
+     */
+    public static HttpService fromDns(String baseUrl, long refreshInterval) {
+        URI uri = URI.create(baseUrl);
+        HttpService service = new HttpService(resolve(uri));
+        service.host = uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "");
+        service.refreshTask = REFRESHER.scheduleWithFixedDelay(() -> service.refresh(() -> resolve(uri)),
+                refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        return service;
+    }
+
+    /**
+     * 设置负载均衡策略, 默认 {@link LoadBalanceStrategy#latencyEwma()}
+     *
+     * @param strategy 负载均衡策略
+     * @return HttpService
+     */
+    public HttpService setStrategy(LoadBalanceStrategy strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * 设置异常剔除: 连续失败 ( I/O 异常或 5xx 响应 ) 达到次数的后端地址被剔除一段时间, 每次剔除的时间随剔除次数增加;
+     * 默认连续失败5次剔除30秒, 同时最多剔除一半的后端地址
+     *
+     * @param maxFailures        剔除前允许的连续失败次数, 小于1时不剔除
+     * @param baseEjectionTime   基础剔除时间, 单位毫秒
+     * @param maxEjectionPercent 同时被剔除的后端地址的最大比例, 百分比
+     * @return HttpService
+     */
+    public HttpService setOutlierDetection(int maxFailures, long baseEjectionTime, int maxEjectionPercent) {
+        this.maxFailures = maxFailures;
+        this.baseEjectionTime = baseEjectionTime;
+        this.maxEjectionPercent = maxEjectionPercent;
+        return this;
+    }
+
+    /**
+     * 替换后端地址, 仍然存在的后端地址保留其统计信息
+     *
+     * @param baseUrls 后端的基础地址
+     * @return HttpService
+     */
+    public HttpService setEndpoints(List<String> baseUrls) {
+        Map<String, HttpEndpoint> existing = new HashMap<>();
+        for (HttpEndpoint endpoint : endpoints) {
+            existing.put(endpoint.getBaseUrl(), endpoint);
+        }
+        List<HttpEndpoint> updated = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            HttpEndpoint endpoint = new HttpEndpoint(baseUrl);
+            updated.add(existing.getOrDefault(endpoint.getBaseUrl(), endpoint));
+        }
+        this.endpoints = Collections.unmodifiableList(updated);
+        return this;
+    }
+
+    /**
+     * 当前的后端地址
+     *
+     * @return 后端地址
+     */
+    public List<HttpEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 停止定时刷新后端地址
+     */
+    public void close() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+    }
+
+    /**
+     * HTTP GET 请求
+     *
+     * @param path 请求路径, 如 /users
+     * @return 返回一个 HTTP URI 请求对象
+     */
+    public HttpUriRequest get(String path) {
+        HttpEndpoint endpoint = select();
+        return bind(new HttpUriRequest(new HttpGet(endpoint.getBaseUrl() + path)), endpoint);
+    }
+
+    /**
+     * 普通表单 HTTP PUT 请求
+     *
+     * @param path 请求路径
+     * @return 返回一个 HTTP 表单请求对象
+     */
+    public HttpUrlencodedFormRequest put(String path) {
+        HttpEndpoint endpoint = select();
+        return bind(new HttpUrlencodedFormRequest(new HttpPut(endpoint.getBaseUrl() + path)), endpoint);
+    }
+
+    /**
+     * 支持文件上传的 HTTP PUT 请求
+     *
+     * @param path 请求路径
+     * @return 返回一个支持文件上传的 HTTP 表单请求对象
+     */
+    public HttpMultipartFormRequest putMultipartForm(String path) {
+        HttpEndpoint endpoint = select();
+        return bind(new HttpMultipartFormRequest(new HttpPut(endpoint.getBaseUrl() + path)), endpoint);
+    }
+
+    /**
+     * 普通表单 HTTP POST 请求
+     *
+     * @param path 请求路径
+     * @return 返回一个 HTTP 表单请求对象
+     */
+    public HttpUrlencodedFormRequest post(String path) {
+        HttpEndpoint endpoint = select();
+        return bind(new HttpUrlencodedFormRequest(new HttpPost(endpoint.getBaseUrl() + path)), endpoint);
+    }
+
+    /**
+     * 支持文件上传的 HTTP POST 请求
+     *
+     * @param path 请求路径
+     * @return 返回一个支持文件上传的 HTTP 表单请求对象
+     */
+    public HttpMultipartFormRequest postMultipartForm(String path) {
+        HttpEndpoint endpoint = select();
+        return bind(new HttpMultipartFormRequest(new HttpPost(endpoint.getBaseUrl() + path)), endpoint);
+    }
+
+    /**
+     * HTTP DELETE 请求
+     *
+     * @param path 请求路径
+     * @return 返回一个 HTTP URI 请求对象
+     */
+    public HttpUriRequest delete(String path) {
+        HttpEndpoint endpoint = select();
+        return bind(new HttpUriRequest(new HttpDelete(endpoint.getBaseUrl() + path)), endpoint);
+    }
+
+    /**
+     * 按负载均衡策略选择后端地址, 被剔除的后端地址不参与选择; 被剔除的比例超过上限时所有后端地址都参与选择
+     *
+     * @return HttpEndpoint
+     */
+    HttpEndpoint select() {
+        return select(null);
+    }
+
+    /**
+     * 按负载均衡策略选择后端地址, 重试时排除刚刚失败的后端地址, 没有其他可选的后端地址时仍可能选中它
+     *
+     * @param excluded 排除的后端地址, 可以为 null
+     * @return HttpEndpoint
+     */
+    HttpEndpoint select(HttpEndpoint excluded) {
+        List<HttpEndpoint> all = endpoints;
+        if (all.isEmpty()) {
+            throw new IllegalStateException("no endpoints available");
+        }
+        List<HttpEndpoint> available = all;
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).isEjected()) {
+                available = new ArrayList<>(all.size());
+                for (HttpEndpoint endpoint : all) {
+                    if (!endpoint.isEjected()) {
+                        available.add(endpoint);
+                    }
+                }
+                break;
+            }
+        }
+        if (available.isEmpty() || (all.size() - available.size()) * 100 > maxEjectionPercent * all.size()) {
+            available = all;
+        }
+        if (excluded != null && available.size() > 1 && available.contains(excluded)) {
+            available = new ArrayList<>(available);
+            available.remove(excluded);
+        }
+        return strategy.select(available);
+    }
+
+    /**
+     * 将请求绑定到后端地址, 请求完成时更新后端地址的统计信息; 从 DNS 解析后端地址时设置请求头 Host
+     *
+     * @param request  请求
+     * @param endpoint 后端地址
+     * @param <T>      请求的类型
+     * @return 请求
+     */
+    private <T extends HttpClientRequest> T bind(T request, HttpEndpoint endpoint) {
+        request.setEndpoint(endpoint, this);
+        if (host != null) {
+            request.getRequest().setHeader(HttpHeaders.HOST, host);
+        }
+        return request;
+    }
+
+    /**
+     * 记录请求完成
+     *
+     * @param endpoint 后端地址
+     * @param duration 请求耗时, 单位纳秒
+     * @param failure  是否失败
+     */
+    void complete(HttpEndpoint endpoint, long duration, boolean failure) {
+        endpoint.complete(duration, failure, maxFailures, baseEjectionTime);
+    }
+
+    /**
+     * 刷新后端地址, 读取失败或读取结果为空时保留原来的后端地址
+     *
+     * @param loader 读取后端地址
+     */
+    private void refresh(Supplier<List<String>> loader) {
+        try {
+            List<String> baseUrls = loader.get();
+            if (!baseUrls.isEmpty()) {
+                setEndpoints(baseUrls);
+            }
+        } catch (RuntimeException e) {
+            // 保留原来的后端地址
+        }
+    }
+
+    /**
+     * 读取文件中的后端地址
+     *
+     * @param file 文件路径
+     * @return 后端地址
+     */
+    private static List<String> readFile(Path file) {
+        try {
+            List<String> baseUrls = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    baseUrls.add(line);
+                }
+            }
+            return baseUrls;
+        } catch (IOException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 文件的修改时间
+     *
+     * @param file 文件路径
+     * @return 修改时间, 读取失败时返回 -1
+     */
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析主机名对应的所有 IP 地址
+     *
+     * @param uri 基础地址
+     * @return 后端地址
+     */
+    private static List<String> resolve(URI uri) {
+        try {
+            List<String> baseUrls = new ArrayList<>();
+            for (InetAddress address : InetAddress.getAllByName(uri.getHost())) {
+                String host = address.getHostAddress();
+                if (host.indexOf(':') >= 0) {
+                    host = "[" + host + "]";
+                }
+                baseUrls.add(uri.getScheme() + "://" + host + (uri.getPort() > 0 ? ":" + uri.getPort() : ""));
+            }
+            return baseUrls;
+        } catch (UnknownHostException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+}
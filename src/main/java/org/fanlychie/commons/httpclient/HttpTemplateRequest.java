@@ -0,0 +1,205 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.ByteArrayBuffer;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按请求模板创建的一次调用, 只填入变化的部分: 路径变量、少量参数和请求内容; 固定的部分直接使用模板中预先编码的形式
+ *
+ * @see HttpRequestTemplate
+ */
+public class HttpTemplateRequest extends HttpClientRequest {
+
+    /**
+     * 请求模板
+     */
+    private final HttpRequestTemplate template;
+
+    /**
+     * 路径变量的值, 与模板中路径变量的名称一一对应
+     */
+    private final String[] variableValues;
+
+    /**
+     * 本次调用添加的查询参数, 已编码
+     */
+    private StringBuilder query;
+
+    /**
+     * 本次调用添加的表单参数, 已编码
+     */
+    private StringBuilder form;
+
+    /**
+     * 请求内容, 设置后取代表单
+     */
+    private AbstractHttpEntity body;
+
+    /**
+     * 创建一次调用
+     *
+     * @param request  HttpRequestBase
+     * @param template 请求模板
+     */
+    HttpTemplateRequest(HttpRequestBase request, HttpRequestTemplate template) {
+        super(request);
+        this.template = template;
+        this.variableValues = new String[template.getVariables().length];
+    }
+
+    /**
+     * 设置路径变量的值, 值在拼接时编码
+     *
+     * @param name  路径变量的名称
+     * @param value 路径变量的值
+     * @return HttpTemplateRequest
+     */
+    public HttpTemplateRequest setPathVariable(String name, String value) {
+        String[] variables = template.getVariables();
+        boolean found = false;
+        for (int i = 0; i < variables.length; i++) {
+            // 同名的路径变量可以出现多次
+            if (variables[i].equals(name)) {
+                variableValues[i] = value;
+                found = true;
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException("no path variable '" + name + "' in " + template);
+        }
+        return this;
+    }
+
+    /**
+     * 添加请求参数, GET 和 DELETE 请求的参数添加到查询参数, POST 和 PUT 请求的参数添加到表单
+     *
+     * @param name  参数名称
+     * @param value 参数的值
+     * @return HttpTemplateRequest
+     */
+    public HttpTemplateRequest addParameter(String name, String value) {
+        if (!template.hasForm()) {
+            return addQueryParameter(name, value);
+        }
+        if (form == null) {
+            form = new StringBuilder();
+        }
+        form.append(HttpRequestTemplate.encodeParameter(form.length() > 0 || template.getForm().length > 0, name, value));
+        return this;
+    }
+
+    /**
+     * 添加查询参数
+     *
+     * @param name  参数名称
+     * @param value 参数的值
+     * @return HttpTemplateRequest
+     */
+    public HttpTemplateRequest addQueryParameter(String name, String value) {
+        if (query == null) {
+            query = new StringBuilder();
+        }
+        query.append(HttpRequestTemplate.encodeParameter(query.length() > 0 || !template.getQuery().isEmpty(), name, value));
+        return this;
+    }
+
+    /**
+     * 设置请求内容, 取代表单参数
+     *
+     * @param content     文本内容
+     * @param contentType 内容类型
+     * @return HttpTemplateRequest
+     */
+    public HttpTemplateRequest setBody(String content, ContentType contentType) {
+        return setBody(content.getBytes(contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8),
+                contentType);
+    }
+
+    /**
+     * 设置请求内容, 取代表单参数
+     *
+     * @param content     字节内容
+     * @param contentType 内容类型
+     * @return HttpTemplateRequest
+     */
+    public HttpTemplateRequest setBody(byte[] content, ContentType contentType) {
+        this.body = new ByteArrayEntity(content, contentType);
+        return this;
+    }
+
+    /**
+     * 发起请求前的处理工作
+     *
+     * @param request HttpRequestBase
+     * @throws Exception
+     */
+    @Override
+    protected void preHandle(HttpRequestBase request) throws Exception {
+        request.setURI(URI.create(buildURI()));
+        if (request instanceof HttpEntityEnclosingRequestBase) {
+            AbstractHttpEntity entity = body != null ? body : buildForm();
+            if (entity != null) {
+                ((HttpEntityEnclosingRequestBase) request).setEntity(entity);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(request.toString());
+        }
+    }
+
+    /**
+     * 拼接最终的请求地址
+     *
+     * @return 请求地址
+     */
+    private String buildURI() {
+        String[] segments = template.getSegments();
+        String[] variables = template.getVariables();
+        String templateQuery = template.getQuery();
+        int length = templateQuery.length() + (query != null ? query.length() : 0) + 1;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        StringBuilder uri = new StringBuilder(length + variables.length * 16).append(segments[0]);
+        for (int i = 0; i < variables.length; i++) {
+            if (variableValues[i] == null) {
+                throw new IllegalStateException("missing path variable '" + variables[i] + "' in " + template);
+            }
+            uri.append(UrlEncoder.encodePath(variableValues[i])).append(segments[i + 1]);
+        }
+        if (!templateQuery.isEmpty() || query != null) {
+            uri.append('?').append(templateQuery);
+            if (query != null) {
+                uri.append(query);
+            }
+        }
+        return uri.toString();
+    }
+
+    /**
+     * 拼接表单, 模板中预先编码的表单参数直接复制
+     *
+     * @return 表单实体, 没有表单参数时为 null
+     */
+    private AbstractHttpEntity buildForm() {
+        byte[] templateForm = template.getForm();
+        if (form == null) {
+            return templateForm.length > 0 ? new ByteArrayEntity(templateForm, ContentTypeConstant.APPLICATION_FORM_URLENCODED) : null;
+        }
+        ByteArrayBuffer buffer = new ByteArrayBuffer(templateForm.length + form.length());
+        buffer.append(templateForm, 0, templateForm.length);
+        for (int i = 0; i < form.length(); i++) {
+            // 编码后的参数只包含 ASCII 字符
+            buffer.append(form.charAt(i));
+        }
+        return new ByteArrayEntity(buffer.buffer(), 0, buffer.length(), ContentTypeConstant.APPLICATION_FORM_URLENCODED);
+    }
+
+}
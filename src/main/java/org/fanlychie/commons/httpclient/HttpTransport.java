@@ -0,0 +1,20 @@
+package org.fanlychie.commons.httpclient;
+
+/**
+ * 请求的传输协议
+ */
+public enum HttpTransport {
+
+    /**
+     * HTTP/1.1, 每个连接同一时间只处理一个请求, 连接在连接池中复用
+     */
+    HTTP_1_1,
+
+    /**
+     * HTTP/2, 同一主机的并发请求多路复用少量的连接, 带流级别的流量控制和 HPACK 头部压缩;
+     * https 地址通过 ALPN 协商, http 地址直接以 HTTP/2 通信 ( prior knowledge ). 需要自行引入 httpclient5 依赖;
+     * 设置了代理或自定义的 SSL 连接工厂的请求仍以 HTTP/1.1 执行
+     */
+    HTTP_2
+
+}
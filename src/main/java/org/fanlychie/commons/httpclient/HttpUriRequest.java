@@ -1,10 +1,27 @@
 package org.fanlychie.commons.httpclient;
 
-import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.message.BasicNameValuePair;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * HTTP URI 地址请求
@@ -13,9 +30,39 @@ import java.util.Map;
 public class HttpUriRequest extends HttpClientRequest {
 
     /**
-     * URI 构建器
+     * 请求参数
      */
-    private URIBuilder uriBuilder;
+    private List<NameValuePair> parameters = new ArrayList<>();
+
+    /**
+     * 是否合并相同的并发请求
+     */
+    private boolean coalescing;
+
+    /**
+     * 参与合并键计算的请求头名称
+     */
+    private String[] coalescingHeaders = new String[0];
+
+    /**
+     * 未设置对冲预算的请求共用的预算, 对冲请求不超过请求的10%, 每秒至少允许10次对冲
+     */
+    private static final RetryBudget SHARED_HEDGING_BUDGET = new RetryBudget(0.1, 10);
+
+    /**
+     * 发出对冲请求前的等待时间, 单位毫秒, 小于0时不对冲
+     */
+    private long hedgingDelay = -1;
+
+    /**
+     * 对冲请求发往的备用主机, 为 null 时发往同一主机
+     */
+    private HttpHost hedgingHost;
+
+    /**
+     * 对冲预算
+     */
+    private RetryBudget hedgingBudget = SHARED_HEDGING_BUDGET;
 
     /**
      * 创建一个 URI HTTP 客户端请求
@@ -24,7 +71,6 @@ public class HttpUriRequest extends HttpClientRequest {
      */
     public HttpUriRequest(HttpRequestBase request) {
         super(request);
-        this.uriBuilder = new URIBuilder().setCharset(Consts.UTF_8);
     }
 
     /**
@@ -35,7 +81,7 @@ public class HttpUriRequest extends HttpClientRequest {
      * @return HttpUriRequest
      */
     public HttpUriRequest addParameter(String name, String value) {
-        uriBuilder.addParameter(name, value);
+        parameters.add(new BasicNameValuePair(name, value));
         return this;
     }
 
@@ -50,6 +96,224 @@ public class HttpUriRequest extends HttpClientRequest {
         return this;
     }
 
+    /**
+     * 设置是否合并相同的并发请求 ( 只对 GET 和 HEAD 请求生效 ): 请求方法、最终的请求地址、
+     * {@link #setCoalescingHeaders(String...)} 指定的请求头以及客户端配置 ( 代理、SSL、超时、传输协议等 )
+     * 都相同的并发请求只有第一个真正发往服务器,
+     * 其余的等待并共享它的结果. 只作用于返回文本内容的 execute 方法
+     *
+     * @param coalescing 是否合并
+     * @return HttpUriRequest
+     */
+    public HttpUriRequest setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+        return this;
+    }
+
+    /**
+     * 设置参与合并键计算的请求头, 默认只按请求方法和请求地址合并
+     *
+     * @param headerNames 请求头名称
+     * @return HttpUriRequest
+     */
+    public HttpUriRequest setCoalescingHeaders(String... headerNames) {
+        this.coalescingHeaders = headerNames;
+        return this;
+    }
+
+    /**
+     * 设置对冲请求 ( 只对 GET 和 DELETE 请求生效 ): 请求在等待时间内没有完成时, 向同一主机再发出一个相同的请求,
+     * 先完成的请求作为结果, 另一个请求随即被中止. 等待时间通常取该接口耗时的 p95, 对冲请求的数量受对冲预算限制.
+     * 只作用于返回文本内容的 execute 方法
+     *
+     * @param delay 发出对冲请求前的等待时间, 单位毫秒, 小于0时不对冲
+     * @return HttpUriRequest
+     */
+    public HttpUriRequest setHedging(long delay) {
+        return setHedging(delay, null);
+    }
+
+    /**
+     * 设置对冲请求, 对冲请求发往备用主机, 请求路径和参数不变
+     *
+     * @param delay         发出对冲请求前的等待时间, 单位毫秒, 小于0时不对冲
+     * @param alternateHost 备用主机, 如 http://10.0.0.2:8080, 为 null 时发往同一主机
+     * @return HttpUriRequest
+     * @see #setHedging(long)
+     */
+    public HttpUriRequest setHedging(long delay, String alternateHost) {
+        this.hedgingDelay = delay;
+        this.hedgingHost = alternateHost != null ? HttpHost.create(alternateHost) : null;
+        return this;
+    }
+
+    /**
+     * 设置对冲预算, 默认所有请求共用一个预算 ( 对冲请求不超过请求的10%, 每秒至少允许10次对冲 ); 为 null 时不限制
+     *
+     * @param hedgingBudget 对冲预算
+     * @return HttpUriRequest
+     */
+    public HttpUriRequest setHedgingBudget(RetryBudget hedgingBudget) {
+        this.hedgingBudget = hedgingBudget;
+        return this;
+    }
+
+    /**
+     * 执行请求, 开启合并时相同的并发请求共享同一个结果, 开启对冲时慢请求由对冲请求兜底
+     *
+     * @return 请求结果的状态码和文本内容
+     */
+    @Override
+    public HttpResult execute() {
+        HttpRequestBase request = getRequest();
+        String method = request.getMethod();
+        if (!coalescing || !(HttpGet.METHOD_NAME.equals(method) || HttpHead.METHOD_NAME.equals(method))) {
+            return executeHedged();
+        }
+        StringBuilder key = new StringBuilder(method).append(' ').append(buildURI(request));
+        for (String name : coalescingHeaders) {
+            key.append('\n').append(name).append(':');
+            for (Header header : request.getHeaders(name)) {
+                key.append(header.getValue()).append(',');
+            }
+        }
+        // 客户端配置不同的请求可能得到不同的结果, 不能合并
+        return SingleFlight.execute(Arrays.asList(key.toString(), getHttpClientKey(), getTransport()), this::executeHedged);
+    }
+
+    /**
+     * 执行请求, 开启对冲且请求方法为 GET 或 DELETE 时, 原请求在等待时间内没有完成则发出对冲请求
+     *
+     * @return 请求结果的状态码和文本内容
+     */
+    private HttpResult executeHedged() {
+        HttpRequestBase request = getRequest();
+        String method = request.getMethod();
+        if (hedgingDelay < 0 || !(HttpGet.METHOD_NAME.equals(method) || HttpDelete.METHOD_NAME.equals(method))) {
+            return super.execute();
+        }
+        URI uri = buildURI(request);
+        HttpRequestBase primaryRequest = copyRequest(request, uri);
+        // 调用方可能已经占用了并发许可, 原请求和对冲请求不再排队等待许可, 避免许可耗尽时互相等待
+        CompletableFuture<HttpResult> primary = HttpClientExecutor.fork(copy(primaryRequest)::execute);
+        if (hedgingBudget != null) {
+            hedgingBudget.onRequest();
+        }
+        try {
+            return primary.get(hedgingDelay, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 原请求没有在等待时间内完成
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primaryRequest.abort();
+            throw new RuntimeCastException(e);
+        } catch (ExecutionException e) {
+            return join(primary);
+        }
+        if (hedgingBudget != null && !hedgingBudget.tryAcquire()) {
+            return join(primary);
+        }
+        HttpRequestBase hedgedRequest;
+        try {
+            hedgedRequest = copyRequest(request, hedgingHost != null ? URIUtils.rewriteURI(uri, hedgingHost) : uri);
+        } catch (URISyntaxException e) {
+            throw new RuntimeCastException(e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("hedging " + hedgedRequest.getRequestLine());
+        }
+        CompletableFuture<HttpResult> hedged = HttpClientExecutor.fork(copy(hedgedRequest)::execute);
+        // 先成功完成的请求作为结果, 都失败时以原请求的异常为准
+        CompletableFuture<HttpResult> winner = new CompletableFuture<>();
+        primary.whenComplete((result, e) -> {
+            if (e == null) {
+                winner.complete(result);
+            } else {
+                // 对冲请求成功时以它为结果, 回调按后进先出执行, 不能无条件以原请求的异常结束
+                hedged.whenComplete((r, ex) -> {
+                    if (ex != null) {
+                        winner.completeExceptionally(e);
+                    }
+                });
+            }
+        });
+        hedged.whenComplete((result, e) -> {
+            if (e == null) {
+                winner.complete(result);
+            }
+        });
+        try {
+            return join(winner);
+        } finally {
+            // 中止未完成的请求, 断开其连接
+            if (!primary.isDone()) {
+                primaryRequest.abort();
+            }
+            if (!hedged.isDone()) {
+                hedgedRequest.abort();
+            }
+        }
+    }
+
+    /**
+     * 复制当前请求的所有配置, 请求地址已经是最终的地址, 不再合并, 也不再对冲
+     *
+     * @param request 新的 HTTP 请求
+     * @return HttpUriRequest
+     */
+    @Override
+    HttpUriRequest copy(HttpRequestBase request) {
+        HttpUriRequest copy = (HttpUriRequest) super.copy(request);
+        copy.parameters = new ArrayList<>();
+        copy.coalescing = false;
+        copy.hedgingDelay = -1;
+        return copy;
+    }
+
+    /**
+     * 以新的请求地址复制 HTTP 请求
+     *
+     * @param request HttpRequestBase
+     * @param uri     请求地址
+     * @return HttpRequestBase
+     */
+    private static HttpRequestBase copyRequest(HttpRequestBase request, URI uri) {
+        try {
+            HttpRequestBase copy = (HttpRequestBase) request.clone();
+            copy.setURI(uri);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 等待结果, 还原被包装的运行时异常
+     *
+     * @param future 结果
+     * @return 请求结果的状态码和文本内容
+     */
+    private static HttpResult join(CompletableFuture<HttpResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeCastException(e.getCause());
+        }
+    }
+
+    /**
+     * 最终的请求地址, 请求参数直接编码后追加到原地址上
+     *
+     * @param request HttpRequestBase
+     * @return URI
+     */
+    private URI buildURI(HttpRequestBase request) {
+        return UrlEncoder.appendQuery(request.getURI(), parameters);
+    }
+
     /**
      * 发起请求前的处理工作
      *
@@ -58,9 +322,7 @@ public class HttpUriRequest extends HttpClientRequest {
      */
     @Override
     protected void preHandle(HttpRequestBase request) throws Exception {
-        if (uriBuilder.getQueryParams().size() > 0) {
-            request.setURI(uriBuilder.setPath(request.getURI().toString()).build());
-        }
+        request.setURI(buildURI(request));
         if (log.isDebugEnabled()) {
             log.debug(request.toString());
         }
@@ -5,9 +5,20 @@ import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.message.BasicNameValuePair;
+import org.fanlychie.commons.httpclient.mapper.MessageConverter;
+import org.fanlychie.commons.httpclient.mapper.MessageConverters;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Map;
 
 /**
@@ -21,6 +32,21 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
      */
     private EntityBuilder builder;
 
+    /**
+     * 流式的请求实体, 设置后取代实体构建器构建的实体
+     */
+    private HttpEntity streamEntity;
+
+    /**
+     * 请求内容的压缩方式 ( gzip 或 deflate ), 为 null 时不压缩
+     */
+    private String requestCompression;
+
+    /**
+     * 请求内容的压缩阈值, 长度已知且小于该值的请求内容不压缩
+     */
+    private int requestCompressionThreshold;
+
     /**
      * 创建一个普通表单的 HTTP 客户端请求
      *
@@ -30,7 +56,7 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
         super(request);
         this.builder = EntityBuilder.create()
                 .setContentEncoding("UTF-8")
-                .setParameters(new LinkedList<NameValuePair>())
+                .setParameters(new ArrayList<NameValuePair>())
                 .setContentType(ContentTypeConstant.APPLICATION_FORM_URLENCODED);
     }
 
@@ -65,10 +91,52 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
      */
     public HttpUrlencodedFormRequest addJSONParameter(String content) {
         builder.setContentType(ContentTypeConstant.APPLICATION_JSON);
+        streamEntity = null;
         builder.setText(content);
         return this;
     }
 
+    /**
+     * 添加 JSON 请求参数, 由已注册的 JSON 消息转换器序列化
+     *
+     * @param value 对象
+     * @return HttpUrlencodedFormRequest
+     * @see MessageConverters#register(MessageConverter)
+     */
+    public HttpUrlencodedFormRequest addJSONParameter(Object value) {
+        return addObjectParameter(ContentTypeConstant.APPLICATION_JSON, value);
+    }
+
+    /**
+     * 添加 JSON 请求参数, 内容由回调在发送时直接写出, 以分块传输编码发送
+     *
+     * @param producer 内容写出回调
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest addJSONParameter(ContentProducer producer) {
+        return setStreamEntity(new EntityTemplate(producer), ContentTypeConstant.APPLICATION_JSON);
+    }
+
+    /**
+     * 添加 JSON 请求参数, 内容从输入流读取后直接发送, 以分块传输编码发送; 输入流只能读取一次, 失败时不会重试
+     *
+     * @param in JSON 内容的输入流
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest addJSONParameter(InputStream in) {
+        return setStreamEntity(new InputStreamEntity(in), ContentTypeConstant.APPLICATION_JSON);
+    }
+
+    /**
+     * 添加 JSON 请求参数, 内容从文件直接传输, 不读入内存
+     *
+     * @param path JSON 文件路径
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest addJSONParameter(Path path) {
+        return setStreamEntity(new PathEntity(path, null), ContentTypeConstant.APPLICATION_JSON);
+    }
+
     /**
      * 添加 XML 请求参数
      *
@@ -77,10 +145,52 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
      */
     public HttpUrlencodedFormRequest addXMLParameter(String content) {
         builder.setContentType(ContentTypeConstant.APPLICATION_XML);
+        streamEntity = null;
         builder.setText(content);
         return this;
     }
 
+    /**
+     * 添加 XML 请求参数, 由已注册的 XML 消息转换器序列化
+     *
+     * @param value 对象
+     * @return HttpUrlencodedFormRequest
+     * @see MessageConverters#register(MessageConverter)
+     */
+    public HttpUrlencodedFormRequest addXMLParameter(Object value) {
+        return addObjectParameter(ContentTypeConstant.APPLICATION_XML, value);
+    }
+
+    /**
+     * 添加 XML 请求参数, 内容由回调在发送时直接写出, 以分块传输编码发送
+     *
+     * @param producer 内容写出回调
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest addXMLParameter(ContentProducer producer) {
+        return setStreamEntity(new EntityTemplate(producer), ContentTypeConstant.APPLICATION_XML);
+    }
+
+    /**
+     * 添加 XML 请求参数, 内容从输入流读取后直接发送, 以分块传输编码发送; 输入流只能读取一次, 失败时不会重试
+     *
+     * @param in XML 内容的输入流
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest addXMLParameter(InputStream in) {
+        return setStreamEntity(new InputStreamEntity(in), ContentTypeConstant.APPLICATION_XML);
+    }
+
+    /**
+     * 添加 XML 请求参数, 内容从文件直接传输, 不读入内存
+     *
+     * @param path XML 文件路径
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest addXMLParameter(Path path) {
+        return setStreamEntity(new PathEntity(path, null), ContentTypeConstant.APPLICATION_XML);
+    }
+
     /**
      * 添加请求参数
      *
@@ -88,10 +198,74 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
      * @return HttpUrlencodedFormRequest
      */
     public HttpUrlencodedFormRequest addParameter(String content) {
+        streamEntity = null;
         builder.setText(content);
         return this;
     }
 
+    /**
+     * 添加由消息转换器序列化的请求参数, 对象在发送时才序列化并直接写出, 以分块传输编码发送
+     *
+     * @param contentType 内容类型
+     * @param value       对象
+     * @return HttpUrlencodedFormRequest
+     */
+    private HttpUrlencodedFormRequest addObjectParameter(ContentType contentType, Object value) {
+        MessageConverter converter = MessageConverters.findExact(contentType.getMimeType());
+        if (converter == null) {
+            throw new IllegalStateException("no MessageConverter registered for " + contentType.getMimeType());
+        }
+        return setStreamEntity(new EntityTemplate(out -> {
+            try {
+                converter.write(value, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }), converter.getContentType());
+    }
+
+    /**
+     * 设置流式的请求实体
+     *
+     * @param entity      请求实体
+     * @param contentType 内容类型
+     * @return HttpUrlencodedFormRequest
+     */
+    private HttpUrlencodedFormRequest setStreamEntity(AbstractHttpEntity entity, ContentType contentType) {
+        entity.setContentType(contentType.toString());
+        // 长度未知时使用分块传输编码
+        entity.setChunked(entity.getContentLength() < 0);
+        this.streamEntity = entity;
+        return this;
+    }
+
+    /**
+     * 设置请求内容的压缩方式, 请求内容在发送时以流的方式压缩; 需要服务器端支持解压相应 Content-Encoding 的请求内容
+     *
+     * @param contentEncoding 压缩方式, gzip 或 deflate, 为 null 时不压缩
+     * @param threshold       压缩阈值, 单位字节, 长度已知且小于该值的请求内容不压缩
+     * @return HttpUrlencodedFormRequest
+     */
+    public HttpUrlencodedFormRequest setRequestCompression(String contentEncoding, int threshold) {
+        this.requestCompression = CompressingEntity.checkContentEncoding(contentEncoding);
+        this.requestCompressionThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * 构建表单实体, 参数由编码器直接编码为字节, 不经过 EntityBuilder 的通用编码
+     *
+     * @return 表单实体
+     */
+    private HttpEntity buildForm() {
+        ByteArrayEntity entity = new ByteArrayEntity(UrlEncoder.encodeForm(builder.getParameters()),
+                ContentTypeConstant.APPLICATION_FORM_URLENCODED);
+        entity.setContentEncoding(builder.getContentEncoding());
+        return entity;
+    }
+
     /**
      * 发起请求前的处理工作
      *
@@ -100,7 +274,15 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
      */
     @Override
     protected void preHandle(HttpRequestBase request) throws Exception {
-        HttpEntity entity = builder.build();
+        if (streamEntity != null) {
+            if (log.isDebugEnabled()) {
+                log.debug(request + " " + streamEntity);
+            }
+            ((HttpEntityEnclosingRequestBase) request).setEntity(
+                    CompressingEntity.compress(streamEntity, requestCompression, requestCompressionThreshold));
+            return;
+        }
+        HttpEntity entity = builder.getParameters() != null ? buildForm() : builder.build();
         if (log.isDebugEnabled()) {
             String displayText = request + " " + entity + "\n";
             if (builder.getParameters() != null) {
@@ -111,7 +293,8 @@ public class HttpUrlencodedFormRequest extends HttpClientRequest {
             log.debug(displayText);
         }
         if (entity.getContentLength() > 0) {
-            ((HttpEntityEnclosingRequestBase) request).setEntity(entity);
+            ((HttpEntityEnclosingRequestBase) request).setEntity(
+                    CompressingEntity.compress(entity, requestCompression, requestCompressionThreshold));
         }
     }
 
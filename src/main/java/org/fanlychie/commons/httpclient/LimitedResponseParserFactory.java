@@ -0,0 +1,146 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.MessageConstraints;
+import org.apache.http.impl.conn.DefaultHttpResponseParser;
+import org.apache.http.io.HttpMessageParser;
+import org.apache.http.io.HttpMessageParserFactory;
+import org.apache.http.io.HttpTransportMetrics;
+import org.apache.http.io.SessionInputBuffer;
+import org.apache.http.util.CharArrayBuffer;
+import org.fanlychie.commons.httpclient.exception.ResponseHeaderTooLargeException;
+
+import java.io.IOException;
+
+/**
+ * 限制响应头大小的解析器工厂. 当前线程上设置了最大字节数时, 状态行和响应头逐字节读取并计数, 超出时立即抛出异常,
+ * 不必先把过大的响应头读入内存; 连接在异常时由 httpclient 断开. 没有设置时与默认的解析器相同
+ */
+final class LimitedResponseParserFactory implements HttpMessageParserFactory<HttpResponse> {
+
+    /**
+     * 单例
+     */
+    static final LimitedResponseParserFactory INSTANCE = new LimitedResponseParserFactory();
+
+    /**
+     * 当前线程上正在执行的请求允许的响应头最大字节数, 包括状态行和换行符
+     */
+    static final ThreadLocal<Integer> MAX_HEADER_SIZE = new ThreadLocal<>();
+
+    /**
+     * 私有化
+     */
+    private LimitedResponseParserFactory() {
+    }
+
+    @Override
+    public HttpMessageParser<HttpResponse> create(SessionInputBuffer buffer, MessageConstraints constraints) {
+        LimitedSessionInputBuffer limited = new LimitedSessionInputBuffer(buffer);
+        return new DefaultHttpResponseParser(limited, constraints) {
+
+            @Override
+            protected HttpResponse parseHead(SessionInputBuffer sessionBuffer) throws IOException, HttpException {
+                // 每个响应 ( 包括 1xx 和重定向 ) 重新计数
+                limited.reset();
+                return super.parseHead(sessionBuffer);
+            }
+
+        };
+    }
+
+    /**
+     * 计数的会话输入缓冲, 只用于解析状态行和响应头; 响应内容仍由连接直接从原始的缓冲中读取
+     */
+    private static final class LimitedSessionInputBuffer implements SessionInputBuffer {
+
+        /**
+         * 原始的缓冲
+         */
+        private final SessionInputBuffer delegate;
+
+        /**
+         * 最大字节数, 为0时不限制
+         */
+        private int limit;
+
+        /**
+         * 当前响应已读取的字节数
+         */
+        private int count;
+
+        LimitedSessionInputBuffer(SessionInputBuffer delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * 开始解析新的响应
+         */
+        void reset() {
+            Integer maxHeaderSize = MAX_HEADER_SIZE.get();
+            this.limit = maxHeaderSize != null ? maxHeaderSize : 0;
+            this.count = 0;
+        }
+
+        @Override
+        public int readLine(CharArrayBuffer buffer) throws IOException {
+            if (limit <= 0) {
+                return delegate.readLine(buffer);
+            }
+            int length = 0;
+            int b;
+            while ((b = delegate.read()) != -1) {
+                if (++count > limit) {
+                    throw new ResponseHeaderTooLargeException(limit);
+                }
+                if (b == '\n') {
+                    // 去掉行尾的 CR
+                    if (length > 0 && buffer.charAt(buffer.length() - 1) == '\r') {
+                        buffer.setLength(buffer.length() - 1);
+                        length--;
+                    }
+                    return length;
+                }
+                // 与默认的缓冲一致, 没有设置字符集时按单字节映射
+                buffer.append((char) (b & 0xff));
+                length++;
+            }
+            return length == 0 ? -1 : length;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            CharArrayBuffer buffer = new CharArrayBuffer(64);
+            return readLine(buffer) != -1 ? buffer.toString() : null;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return delegate.read(b, off, len);
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return delegate.read(b);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate.read();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public boolean isDataAvailable(int timeout) throws IOException {
+            return delegate.isDataAvailable(timeout);
+        }
+
+        @Override
+        public HttpTransportMetrics getMetrics() {
+            return delegate.getMetrics();
+        }
+
+    }
+
+}
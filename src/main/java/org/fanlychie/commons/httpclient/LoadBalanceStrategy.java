@@ -0,0 +1,88 @@
+package org.fanlychie.commons.httpclient;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 负载均衡策略, 从可用的后端地址中选出一个
+ */
+@FunctionalInterface
+public interface LoadBalanceStrategy {
+
+    /**
+     * 选择后端地址
+     *
+     * @param endpoints 可用的后端地址, 不为空
+     * @return 选中的后端地址
+     */
+    HttpEndpoint select(List<HttpEndpoint> endpoints);
+
+    /**
+     * 轮询
+     *
+     * @return LoadBalanceStrategy
+     */
+    static LoadBalanceStrategy roundRobin() {
+        AtomicInteger counter = new AtomicInteger();
+        return endpoints -> endpoints.get((counter.getAndIncrement() & Integer.MAX_VALUE) % endpoints.size());
+    }
+
+    /**
+     * 最少进行中请求, 进行中的请求数相同时随机选择
+     *
+     * @return LoadBalanceStrategy
+     */
+    static LoadBalanceStrategy leastOutstanding() {
+        return endpoints -> {
+            int offset = ThreadLocalRandom.current().nextInt(endpoints.size());
+            HttpEndpoint selected = null;
+            for (int i = 0; i < endpoints.size(); i++) {
+                HttpEndpoint endpoint = endpoints.get((offset + i) % endpoints.size());
+                if (selected == null || endpoint.getOutstanding() < selected.getOutstanding()) {
+                    selected = endpoint;
+                }
+            }
+            return selected;
+        };
+    }
+
+    /**
+     * 二选一 ( power of two choices ): 随机选出两个, 取进行中的请求数较少的一个
+     *
+     * @return LoadBalanceStrategy
+     */
+    static LoadBalanceStrategy powerOfTwo() {
+        return endpoints -> {
+            HttpEndpoint[] pair = randomPair(endpoints);
+            return pair[1].getOutstanding() < pair[0].getOutstanding() ? pair[1] : pair[0];
+        };
+    }
+
+    /**
+     * 平均耗时优先: 随机选出两个, 取平均耗时乘以 ( 进行中的请求数 + 1 ) 较小的一个, 慢的后端地址自然分到更少的请求
+     *
+     * @return LoadBalanceStrategy
+     */
+    static LoadBalanceStrategy latencyEwma() {
+        return endpoints -> {
+            HttpEndpoint[] pair = randomPair(endpoints);
+            return pair[1].getCost() < pair[0].getCost() ? pair[1] : pair[0];
+        };
+    }
+
+    /**
+     * 随机选出两个不同的后端地址, 只有一个时两个相同
+     *
+     * @param endpoints 后端地址
+     * @return 两个后端地址
+     */
+    static HttpEndpoint[] randomPair(List<HttpEndpoint> endpoints) {
+        int size = endpoints.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = size > 1 ? (first + 1 + random.nextInt(size - 1)) % size : first;
+        return new HttpEndpoint[]{endpoints.get(first), endpoints.get(second)};
+    }
+
+}
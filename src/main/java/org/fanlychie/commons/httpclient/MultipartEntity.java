@@ -0,0 +1,722 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.io.ContentLengthOutputStream;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import javax.net.ssl.SSLSocket;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * multipart/form-data 实体. 每个部分的头部预先编码, 所有部分的长度已知时预先计算出精确的 Content-Length,
+ * 含有长度未知的输入流时使用分块传输编码. 文件内容的发送方式:
+ * <pre>
+ * 明文连接、长度已知、不压缩     FileChannel.transferTo 直接发送到套接字通道, 不经过用户态 ( sendfile )
+ * 其他情况 ( TLS、分块、压缩 ) 较大的文件区间按分片内存映射后写出, 较小的直接读取
+ * </pre>
+ * ByteBuffer 内容同样在明文连接上直接写入套接字通道, 堆内的 ByteBuffer 和字节数组不复制直接写出
+ */
+class MultipartEntity extends AbstractHttpEntity {
+
+    /**
+     * 换行
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * 分隔线前缀
+     */
+    private static final byte[] DASHES = {'-', '-'};
+
+    /**
+     * 分隔线可用的字符
+     */
+    private static final char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    /**
+     * 写出缓冲区的大小, 大于会话缓冲区的写出直接写入套接字
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 文件区间不小于该值时使用内存映射
+     */
+    private static final long MAP_THRESHOLD = 256 * 1024;
+
+    /**
+     * 每个内存映射分片的最大大小
+     */
+    private static final long MAP_SLICE = 64 * 1024 * 1024;
+
+    /**
+     * 分隔线
+     */
+    private final byte[] boundary;
+
+    /**
+     * 各个部分
+     */
+    private final List<Part> parts = new ArrayList<>();
+
+    /**
+     * 执行请求的上下文, 用于在写出时取得连接的套接字
+     */
+    private HttpContext context;
+
+    /**
+     * 创建 multipart/form-data 实体
+     */
+    MultipartEntity() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[30 + random.nextInt(11)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+        }
+        String boundary = new String(chars);
+        this.boundary = boundary.getBytes(StandardCharsets.US_ASCII);
+        setContentType("multipart/form-data; boundary=" + boundary + "; charset=UTF-8");
+    }
+
+    /**
+     * 添加文本部分
+     *
+     * @param name  参数名称
+     * @param value 参数的值
+     */
+    void addText(String name, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        add(name, null, null, new BufferContent(ByteBuffer.wrap(bytes)));
+    }
+
+    /**
+     * 添加文件部分
+     *
+     * @param name        参数名称
+     * @param filename    文件名称
+     * @param contentType 内容类型
+     * @param path        文件路径
+     * @param position    区间的起始位置
+     * @param length      区间的长度, 小于0时到文件末尾
+     */
+    void addFile(String name, String filename, ContentType contentType, Path path, long position, long length) {
+        try {
+            long size = Files.size(path);
+            if (position < 0 || position > size || length > size - position) {
+                throw new IllegalArgumentException("range [" + position + ", " + (position + length) + ") out of file size " + size);
+            }
+            add(name, filename, contentType, new FileContent(path, position, length < 0 ? size - position : length));
+        } catch (IOException e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 添加 ByteBuffer 部分, 发送 position 到 limit 之间的内容, 不修改 ByteBuffer 的位置
+     *
+     * @param name        参数名称
+     * @param filename    文件名称
+     * @param contentType 内容类型
+     * @param buffer      内容
+     */
+    void addBuffer(String name, String filename, ContentType contentType, ByteBuffer buffer) {
+        add(name, filename, contentType, new BufferContent(buffer.duplicate()));
+    }
+
+    /**
+     * 添加输入流部分, 输入流只能读取一次
+     *
+     * @param name        参数名称
+     * @param filename    文件名称
+     * @param contentType 内容类型
+     * @param in          输入流
+     * @param length      内容长度, 小于0时长度未知, 整个实体使用分块传输编码
+     */
+    void addStream(String name, String filename, ContentType contentType, InputStream in, long length) {
+        add(name, filename, contentType, new StreamContent(in, length));
+    }
+
+    /**
+     * 预先编码部分的头部并添加
+     *
+     * @param name        参数名称
+     * @param filename    文件名称, 文本部分为 null
+     * @param contentType 内容类型, 文本部分为 null
+     * @param content     内容
+     */
+    private void add(String name, String filename, ContentType contentType, Content content) {
+        StringBuilder header = new StringBuilder(128)
+                .append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+        if (filename != null) {
+            header.append("; filename=\"").append(escape(filename)).append('"');
+            header.append("\r\nContent-Type: ").append(contentType != null ? contentType : ContentType.DEFAULT_BINARY);
+        }
+        header.append("\r\n\r\n");
+        byte[] text = header.toString().getBytes(StandardCharsets.UTF_8);
+        // --boundary\r\n + 头部
+        byte[] bytes = new byte[DASHES.length + boundary.length + CRLF.length + text.length];
+        int offset = put(bytes, 0, DASHES);
+        offset = put(bytes, offset, boundary);
+        offset = put(bytes, offset, CRLF);
+        put(bytes, offset, text);
+        parts.add(new Part(bytes, content));
+        setChunked(getContentLength() < 0);
+    }
+
+    /**
+     * 设置执行请求的上下文, 明文连接上的文件内容直接发送到套接字通道
+     *
+     * @param context HttpContext
+     */
+    void setContext(HttpContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        for (Part part : parts) {
+            if (part.content instanceof StreamContent) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        // 结尾的 --boundary--\r\n
+        long length = DASHES.length * 2 + boundary.length + CRLF.length;
+        for (Part part : parts) {
+            long contentLength = part.content.length();
+            if (contentLength < 0) {
+                return -1;
+            }
+            length += part.header.length + contentLength + CRLF.length;
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !isRepeatable();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        Iterator<Part> iterator = parts.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+
+            /**
+             * 当前部分的下一段: 0 头部, 1 内容, 2 换行
+             */
+            private int stage;
+
+            /**
+             * 当前部分
+             */
+            private Part part;
+
+            /**
+             * 是否已输出结尾的分隔线
+             */
+            private boolean closed;
+
+            @Override
+            public boolean hasMoreElements() {
+                return !closed;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (part == null || stage == 3) {
+                    if (!iterator.hasNext()) {
+                        closed = true;
+                        return new ByteArrayInputStream(closingBoundary());
+                    }
+                    part = iterator.next();
+                    stage = 0;
+                }
+                switch (stage++) {
+                    case 0:
+                        return new ByteArrayInputStream(part.header);
+                    case 1:
+                        return new PartInputStream(part.content);
+                    default:
+                        return new ByteArrayInputStream(CRLF);
+                }
+            }
+
+        });
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel channel = socketChannel(out);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (Part part : parts) {
+            out.write(part.header);
+            if (channel != null) {
+                // 先写出会话缓冲区中的头部, 再由通道直接发送内容
+                out.flush();
+                part.content.transferTo(channel);
+            } else {
+                part.content.writeTo(out, chunk);
+            }
+            out.write(CRLF);
+        }
+        out.write(closingBoundary());
+        out.flush();
+    }
+
+    /**
+     * 结尾的分隔线
+     *
+     * @return --boundary--\r\n
+     */
+    private byte[] closingBoundary() {
+        byte[] bytes = new byte[DASHES.length * 2 + boundary.length + CRLF.length];
+        int offset = put(bytes, 0, DASHES);
+        offset = put(bytes, offset, boundary);
+        offset = put(bytes, offset, DASHES);
+        put(bytes, offset, CRLF);
+        return bytes;
+    }
+
+    /**
+     * 取得可以直接写入的套接字通道: 只在明文连接上、按 Content-Length 发送 ( 不分块、不压缩 ) 时可用
+     *
+     * @param out 实体的输出流
+     * @return 套接字通道, 不可用时为 null
+     */
+    private WritableByteChannel socketChannel(OutputStream out) {
+        if (context == null || !(out instanceof ContentLengthOutputStream)) {
+            return null;
+        }
+        Object connection = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+        if (!(connection instanceof ManagedHttpClientConnection)) {
+            return null;
+        }
+        Socket socket = ((ManagedHttpClientConnection) connection).getSocket();
+        if (socket == null || socket instanceof SSLSocket || socket.getChannel() == null || !socket.getChannel().isBlocking()) {
+            return null;
+        }
+        return socket.getChannel();
+    }
+
+    /**
+     * 转义参数名称和文件名称中的引号和换行
+     *
+     * @param text 文本
+     * @return 转义后的文本
+     */
+    private static String escape(String text) {
+        return text.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    /**
+     * 复制字节
+     *
+     * @param target 目标
+     * @param offset 目标的起始位置
+     * @param source 来源
+     * @return 复制后的位置
+     */
+    private static int put(byte[] target, int offset, byte[] source) {
+        System.arraycopy(source, 0, target, offset, source.length);
+        return offset + source.length;
+    }
+
+    /**
+     * 一个部分: 预先编码的分隔线和头部, 以及内容
+     */
+    private static final class Part {
+
+        private final byte[] header;
+
+        private final Content content;
+
+        Part(byte[] header, Content content) {
+            this.header = header;
+            this.content = content;
+        }
+
+    }
+
+    /**
+     * 部分的内容
+     */
+    private abstract static class Content {
+
+        /**
+         * 内容长度
+         *
+         * @return 长度, 未知时为 -1
+         */
+        abstract long length();
+
+        /**
+         * 写出到输出流
+         *
+         * @param out   输出流
+         * @param chunk 可复用的缓冲区
+         * @throws IOException
+         */
+        abstract void writeTo(OutputStream out, byte[] chunk) throws IOException;
+
+        /**
+         * 直接写入套接字通道, 只在长度已知时调用
+         *
+         * @param channel 套接字通道
+         * @throws IOException
+         */
+        abstract void transferTo(WritableByteChannel channel) throws IOException;
+
+        /**
+         * 以输入流读取内容
+         *
+         * @return 输入流
+         * @throws IOException
+         */
+        abstract InputStream open() throws IOException;
+
+    }
+
+    /**
+     * 文件区间
+     */
+    private static final class FileContent extends Content {
+
+        private final Path path;
+
+        private final long position;
+
+        private final long length;
+
+        FileContent(Path path, long position, long length) {
+            this.path = path;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        @Override
+        void writeTo(OutputStream out, byte[] chunk) throws IOException {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                long end = position + length;
+                if (length < MAP_THRESHOLD) {
+                    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                    for (long pos = position; pos < end; ) {
+                        buffer.clear().limit((int) Math.min(chunk.length, end - pos));
+                        int n = file.read(buffer, pos);
+                        if (n < 0) {
+                            throw new IOException("file truncated: " + path);
+                        }
+                        out.write(chunk, 0, n);
+                        pos += n;
+                    }
+                    return;
+                }
+                // 按分片映射, 内容从页缓存直接复制到输出, 不经过 read 系统调用
+                for (long pos = position; pos < end; ) {
+                    long size = Math.min(MAP_SLICE, end - pos);
+                    MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, pos, size);
+                    while (map.hasRemaining()) {
+                        int n = Math.min(chunk.length, map.remaining());
+                        map.get(chunk, 0, n);
+                        out.write(chunk, 0, n);
+                    }
+                    pos += size;
+                }
+            }
+        }
+
+        @Override
+        void transferTo(WritableByteChannel channel) throws IOException {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                long end = position + length;
+                for (long pos = position; pos < end; ) {
+                    long n = file.transferTo(pos, end - pos, channel);
+                    if (n <= 0 && pos >= file.size()) {
+                        throw new IOException("file truncated: " + path);
+                    }
+                    pos += n;
+                }
+            }
+        }
+
+        @Override
+        InputStream open() throws IOException {
+            FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+            return new InputStream() {
+
+                private long pos = position;
+
+                private final long end = position + length;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (pos >= end) {
+                        return -1;
+                    }
+                    int n = file.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+                    if (n > 0) {
+                        pos += n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    file.close();
+                }
+
+            };
+        }
+
+    }
+
+    /**
+     * ByteBuffer 内容, 也用于文本和字节数组
+     */
+    private static final class BufferContent extends Content {
+
+        private final ByteBuffer buffer;
+
+        BufferContent(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        long length() {
+            return buffer.remaining();
+        }
+
+        @Override
+        void writeTo(OutputStream out, byte[] chunk) throws IOException {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                return;
+            }
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) {
+                int n = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+
+        @Override
+        void transferTo(WritableByteChannel channel) throws IOException {
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        @Override
+        InputStream open() {
+            ByteBuffer source = buffer.duplicate();
+            return new InputStream() {
+
+                @Override
+                public int read() {
+                    return source.hasRemaining() ? source.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!source.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, source.remaining());
+                    source.get(b, off, n);
+                    return n;
+                }
+
+            };
+        }
+
+    }
+
+    /**
+     * 输入流内容
+     */
+    private static final class StreamContent extends Content {
+
+        private final InputStream in;
+
+        private final long length;
+
+        StreamContent(InputStream in, long length) {
+            this.in = in;
+            this.length = length;
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        @Override
+        void writeTo(OutputStream out, byte[] chunk) throws IOException {
+            long remaining = length < 0 ? Long.MAX_VALUE : length;
+            try (InputStream source = in) {
+                int n;
+                while (remaining > 0 && (n = source.read(chunk, 0, (int) Math.min(chunk.length, remaining))) != -1) {
+                    out.write(chunk, 0, n);
+                    remaining -= n;
+                }
+            }
+            if (length >= 0 && remaining > 0) {
+                throw new IOException("stream ended " + remaining + " bytes before declared length " + length);
+            }
+        }
+
+        @Override
+        void transferTo(WritableByteChannel channel) throws IOException {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            long remaining = length;
+            try (InputStream source = in) {
+                int n;
+                while (remaining > 0 && (n = source.read(chunk, 0, (int) Math.min(chunk.length, remaining))) != -1) {
+                    buffer.clear().limit(n);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    remaining -= n;
+                }
+            }
+            if (remaining > 0) {
+                throw new IOException("stream ended " + remaining + " bytes before declared length " + length);
+            }
+        }
+
+        @Override
+        InputStream open() {
+            if (length < 0) {
+                return in;
+            }
+            // 只读取声明的长度
+            return new FilterInputStream(in) {
+
+                private long remaining = length;
+
+                @Override
+                public int read() throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int b = in.read();
+                    if (b != -1) {
+                        remaining--;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int n = in.read(b, off, (int) Math.min(len, remaining));
+                    if (n > 0) {
+                        remaining -= n;
+                    }
+                    return n;
+                }
+
+            };
+        }
+
+    }
+
+    /**
+     * 部分内容的输入流, 第一次读取时才打开内容, 打开失败时以 IOException 抛给读取方
+     */
+    private static final class PartInputStream extends InputStream {
+
+        /**
+         * 部分内容
+         */
+        private final Content content;
+
+        /**
+         * 已打开的输入流
+         */
+        private InputStream in;
+
+        PartInputStream(Content content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return open().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in != null ? in.available() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+
+        /**
+         * 打开内容
+         *
+         * @return 内容的输入流
+         * @throws IOException
+         */
+        private InputStream open() throws IOException {
+            if (in == null) {
+                in = content.open();
+            }
+            return in;
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件实体, 内容长度在创建时确定, 写出时通过 {@link FileChannel#transferTo} 由 JDK 直接传输文件内容, 不经过用户态的读缓冲区;
+ * 之后文件变大时只发送创建时长度的内容, 变小时发送失败, 发送的字节数总是与声明的 Content-Length 一致
+ */
+class PathEntity extends AbstractHttpEntity {
+
+    /**
+     * 文件路径
+     */
+    private final Path path;
+
+    /**
+     * 创建时的文件大小
+     */
+    private final long length;
+
+    /**
+     * 创建文件实体
+     *
+     * @param path        文件路径
+     * @param contentType 内容类型
+     */
+    PathEntity(Path path, ContentType contentType) {
+        this.path = path;
+        try {
+            this.length = Files.size(path);
+        } catch (IOException e) {
+            throw new RuntimeCastException(e);
+        }
+        if (contentType != null) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new LengthInputStream(Files.newInputStream(path));
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < length) {
+                long n = channel.transferTo(position, length - position, target);
+                if (n <= 0 && position >= channel.size()) {
+                    throw new IOException("file truncated: " + path);
+                }
+                position += n;
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * 只读取创建时长度的文件内容, 文件变小时抛出异常
+     */
+    private final class LengthInputStream extends FilterInputStream {
+
+        /**
+         * 还需要读取的字节数
+         */
+        private long remaining = length;
+
+        LengthInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("file truncated: " + path);
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new IOException("file truncated: " + path);
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+    }
+
+}
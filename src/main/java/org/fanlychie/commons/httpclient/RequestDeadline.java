@@ -0,0 +1,119 @@
+package org.fanlychie.commons.httpclient;
+
+import org.fanlychie.commons.httpclient.exception.DeadlineExceededException;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求的总时限, 到期时在计时线程上中止请求, 使阻塞在等待连接、建立连接或读取上的请求线程立即失败;
+ * 被中止的连接不会归还到连接池中复用
+ */
+final class RequestDeadline {
+
+    /**
+     * 计时线程
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    /**
+     * 总时限, 单位毫秒
+     */
+    private final long timeout;
+
+    /**
+     * 到期的时间, 单位纳秒
+     */
+    private final long expireTime;
+
+    /**
+     * 到期时中止请求的任务, 不需要中止时为 null
+     */
+    private final ScheduledFuture<?> task;
+
+    /**
+     * 是否已到期
+     */
+    private volatile boolean expired;
+
+    /**
+     * 开始计时
+     *
+     * @param timeout 总时限, 单位毫秒
+     * @param abort   到期时中止请求, 为 null 时只计时, 由请求线程按剩余的时间等待
+     */
+    RequestDeadline(long timeout, Runnable abort) {
+        this.timeout = timeout;
+        this.expireTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.task = abort == null ? null : TIMER.schedule(() -> {
+            // 先标记再中止, 请求线程因中止失败时可以据此识别
+            expired = true;
+            abort.run();
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 剩余的时间
+     *
+     * @return 剩余的时间, 单位毫秒, 已到期时为0
+     */
+    long remaining() {
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(expireTime - System.nanoTime()), 0);
+    }
+
+    /**
+     * 是否已到期
+     *
+     * @return 到期返回 true
+     */
+    boolean isExpired() {
+        return expired || System.nanoTime() - expireTime >= 0;
+    }
+
+    /**
+     * 已到期时抛出异常
+     *
+     * @throws DeadlineExceededException
+     */
+    void check() {
+        if (isExpired()) {
+            throw exceeded();
+        }
+    }
+
+    /**
+     * 到期的异常
+     *
+     * @return DeadlineExceededException
+     */
+    DeadlineExceededException exceeded() {
+        return new DeadlineExceededException(timeout);
+    }
+
+    /**
+     * 请求结束, 停止计时
+     */
+    void cancel() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * 创建计时线程
+     *
+     * @return ScheduledThreadPoolExecutor
+     */
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "http-deadline-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 大多数请求在到期前完成, 取消的任务立即移除
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+}
@@ -0,0 +1,17 @@
+package org.fanlychie.commons.httpclient;
+
+/**
+ * 请求监听器, 每个同步执行的请求结束 ( 成功或失败 ) 后以请求指标回调一次; 回调在执行请求的线程上进行,
+ * 应尽快返回, 回调抛出的异常被忽略
+ */
+@FunctionalInterface
+public interface RequestListener {
+
+    /**
+     * 请求结束
+     *
+     * @param metrics 请求指标
+     */
+    void onComplete(RequestMetrics metrics);
+
+}
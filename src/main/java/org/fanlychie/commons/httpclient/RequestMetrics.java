@@ -0,0 +1,352 @@
+package org.fanlychie.commons.httpclient;
+
+import java.net.URI;
+
+/**
+ * 单个请求的指标: 各阶段耗时、请求和响应的字节数、状态码和重试次数. 时间单位均为纳秒, 没有经历的阶段为 -1
+ * ( 如复用连接池中的连接时没有 DNS 解析、TCP 连接和 TLS 握手 )
+ */
+public class RequestMetrics {
+
+    /**
+     * 当前线程上正在记录的请求指标, DNS 解析器和连接工厂通过它记录连接阶段的耗时
+     */
+    static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 请求方法
+     */
+    private final String method;
+
+    /**
+     * 请求地址
+     */
+    private URI uri;
+
+    /**
+     * 请求开始的时间, 单位纳秒
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * 传输协议
+     */
+    private HttpTransport transport = HttpTransport.HTTP_1_1;
+
+    /**
+     * 状态码, 请求失败时为 -1
+     */
+    private int statusCode = -1;
+
+    /**
+     * 请求失败的异常
+     */
+    private Throwable exception;
+
+    /**
+     * DNS 解析耗时
+     */
+    private long dnsTime = -1;
+
+    /**
+     * TCP 连接耗时
+     */
+    private long connectTime = -1;
+
+    /**
+     * TLS 握手耗时
+     */
+    private long tlsTime = -1;
+
+    /**
+     * 从请求开始到收到响应头的耗时
+     */
+    private long timeToFirstByte = -1;
+
+    /**
+     * 读取和处理响应内容的耗时
+     */
+    private long bodyReadTime = -1;
+
+    /**
+     * 总耗时
+     */
+    private long totalTime = -1;
+
+    /**
+     * 请求内容的字节数, 未知时为 -1
+     */
+    private long requestBytes = -1;
+
+    /**
+     * 读取的响应内容的字节数 ( 解压后 )
+     */
+    private long responseBytes;
+
+    /**
+     * 重试次数
+     */
+    private int retries;
+
+    /**
+     * 创建请求指标
+     *
+     * @param method 请求方法
+     * @param uri    请求地址
+     */
+    RequestMetrics(String method, URI uri) {
+        this.method = method;
+        this.uri = uri;
+    }
+
+    /**
+     * 在当前线程上记录 DNS 解析耗时, 当前线程没有在记录请求指标时忽略
+     *
+     * @param nanos 耗时
+     */
+    static void recordDns(long nanos) {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.dnsTime = Math.max(metrics.dnsTime, 0) + nanos;
+        }
+    }
+
+    /**
+     * 在当前线程上记录 TCP 连接耗时
+     *
+     * @param nanos 耗时
+     */
+    static void recordConnect(long nanos) {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.connectTime = Math.max(metrics.connectTime, 0) + nanos;
+        }
+    }
+
+    /**
+     * 在当前线程上记录 TLS 握手耗时
+     *
+     * @param nanos 耗时
+     */
+    static void recordTls(long nanos) {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.tlsTime = Math.max(metrics.tlsTime, 0) + nanos;
+        }
+    }
+
+    /**
+     * 在当前线程上记录一次重试
+     */
+    static void recordRetry() {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.retries++;
+        }
+    }
+
+    /**
+     * 记录收到响应头
+     *
+     * @param statusCode 状态码
+     */
+    void responseReceived(int statusCode) {
+        this.statusCode = statusCode;
+        this.timeToFirstByte = System.nanoTime() - startTime;
+    }
+
+    /**
+     * 记录请求结束
+     *
+     * @param exception 请求失败的异常, 成功时为 null
+     */
+    void complete(Throwable exception) {
+        long now = System.nanoTime();
+        this.exception = exception;
+        this.totalTime = now - startTime;
+        if (timeToFirstByte >= 0) {
+            this.bodyReadTime = totalTime - timeToFirstByte;
+        }
+    }
+
+    /**
+     * 设置最终的请求地址
+     *
+     * @param uri 请求地址
+     */
+    void setUri(URI uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * 设置传输协议
+     *
+     * @param transport 传输协议
+     */
+    void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * 设置请求内容的字节数
+     *
+     * @param requestBytes 字节数
+     */
+    void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    /**
+     * 累加读取的响应内容的字节数
+     *
+     * @param bytes 字节数
+     */
+    void addResponseBytes(long bytes) {
+        this.responseBytes += bytes;
+    }
+
+    /**
+     * 请求方法
+     *
+     * @return 请求方法
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * 请求地址
+     *
+     * @return URI
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * 请求的主机
+     *
+     * @return 主机, 格式为 host:port, 没有端口时只有 host
+     */
+    public String getHost() {
+        return uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+    }
+
+    /**
+     * 传输协议
+     *
+     * @return HttpTransport
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * 状态码
+     *
+     * @return 状态码, 没有收到响应时为 -1
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 请求失败的异常
+     *
+     * @return 异常, 成功时为 null
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * DNS 解析耗时
+     *
+     * @return 耗时, 单位纳秒
+     */
+    public long getDnsTime() {
+        return dnsTime;
+    }
+
+    /**
+     * TCP 连接耗时
+     *
+     * @return 耗时, 单位纳秒
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * TLS 握手耗时
+     *
+     * @return 耗时, 单位纳秒
+     */
+    public long getTlsTime() {
+        return tlsTime;
+    }
+
+    /**
+     * 从请求开始到收到响应头的耗时, 包括等待连接、建立连接和重试
+     *
+     * @return 耗时, 单位纳秒
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * 读取和处理响应内容的耗时
+     *
+     * @return 耗时, 单位纳秒
+     */
+    public long getBodyReadTime() {
+        return bodyReadTime;
+    }
+
+    /**
+     * 总耗时
+     *
+     * @return 耗时, 单位纳秒
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * 请求内容的字节数
+     *
+     * @return 字节数, 没有请求内容时为0, 未知时为 -1
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * 读取的响应内容的字节数, 压缩的响应内容为解压后的字节数
+     *
+     * @return 字节数
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * 重试次数
+     *
+     * @return 次数
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri + " " + transport + " statusCode: " + statusCode
+                + ", dns: " + dnsTime / 1000 + "us, connect: " + connectTime / 1000 + "us, tls: " + tlsTime / 1000
+                + "us, ttfb: " + timeToFirstByte / 1000 + "us, body: " + bodyReadTime / 1000 + "us, total: " + totalTime / 1000
+                + "us, requestBytes: " + requestBytes + ", responseBytes: " + responseBytes + ", retries: " + retries
+                + (exception != null ? ", exception: " + exception : "");
+    }
+
+}
@@ -0,0 +1,214 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.HttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 响应内容解码器, 读取和解码使用分段池化的缓冲区, 按 Content-Length 预先确定缓冲区大小, 并复用字符集解码器;
+ * 分段池按线程标识分段, 对平台线程和虚拟线程同样有效
+ */
+final class ResponseDecoder {
+
+    /**
+     * 缓冲区的初始大小
+     */
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    /**
+     * 可以归还到池中的缓冲区的最大大小, 更大的缓冲区用完即丢弃
+     */
+    private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+    /**
+     * 数组的最大长度, 部分虚拟机在数组头中保留了若干字
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 分段的数量, 为2的幂
+     */
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+    /**
+     * 分段池
+     */
+    private static final AtomicReferenceArray<Slab> POOL = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * 私有化
+     */
+    private ResponseDecoder() {
+
+    }
+
+    /**
+     * 读取响应内容到池化的缓冲区中, 用完后必须调用 {@link #release(Slab)} 归还
+     *
+     * @param entity 响应实体, 可以为 null
+     * @return 缓冲区, 其中 [0, length) 为响应内容
+     * @throws IOException
+     */
+    static Slab read(HttpEntity entity) throws IOException {
+        Slab slab = acquire();
+        slab.length = 0;
+        if (entity == null) {
+            return slab;
+        }
+        try (InputStream in = entity.getContent()) {
+            // 按 Content-Length 预先确定大小, 但不超过池化的上限, 避免服务端声明的长度直接决定分配的内存
+            long contentLength = entity.getContentLength();
+            if (contentLength > slab.bytes.length) {
+                slab.bytes = new byte[(int) Math.min(contentLength, MAX_POOLED_SIZE)];
+            }
+            int length = 0;
+            int read;
+            while (true) {
+                if (length == slab.bytes.length) {
+                    // 长度未知或与 Content-Length 不符时扩容
+                    if (length == MAX_ARRAY_SIZE) {
+                        throw new IOException("response body exceeds " + MAX_ARRAY_SIZE + " bytes");
+                    }
+                    slab.bytes = Arrays.copyOf(slab.bytes, length < MAX_ARRAY_SIZE >> 1 ? length << 1 : MAX_ARRAY_SIZE);
+                }
+                read = in.read(slab.bytes, length, slab.bytes.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+            slab.length = length;
+        } catch (IOException | RuntimeException e) {
+            release(slab);
+            throw e;
+        }
+        return slab;
+    }
+
+    /**
+     * 读取响应内容, 返回大小恰好的字节数组
+     *
+     * @param entity 响应实体, 可以为 null
+     * @return 响应内容
+     * @throws IOException
+     */
+    static byte[] readBytes(HttpEntity entity) throws IOException {
+        Slab slab = read(entity);
+        try {
+            return Arrays.copyOf(slab.bytes, slab.length);
+        } finally {
+            release(slab);
+        }
+    }
+
+    /**
+     * 读取并解码响应内容, 整个过程只创建最终的字符串
+     *
+     * @param entity  响应实体, 可以为 null
+     * @param charset 字符集
+     * @return 响应的文本内容
+     * @throws IOException
+     */
+    static String readText(HttpEntity entity, Charset charset) throws IOException {
+        Slab slab = read(entity);
+        try {
+            CharsetDecoder decoder = slab.decoder(charset);
+            int capacity = (int) Math.ceil(slab.length * (double) decoder.maxCharsPerByte());
+            if (slab.chars.length < capacity) {
+                slab.chars = new char[capacity];
+            }
+            CharBuffer out = CharBuffer.wrap(slab.chars);
+            decoder.decode(ByteBuffer.wrap(slab.bytes, 0, slab.length), out, true);
+            decoder.flush(out);
+            return new String(slab.chars, 0, out.position());
+        } finally {
+            release(slab);
+        }
+    }
+
+    /**
+     * 归还缓冲区
+     *
+     * @param slab 缓冲区
+     */
+    static void release(Slab slab) {
+        if (slab.bytes.length > MAX_POOLED_SIZE) {
+            slab.bytes = new byte[INITIAL_SIZE];
+        }
+        if (slab.chars.length > MAX_POOLED_SIZE) {
+            slab.chars = new char[INITIAL_SIZE];
+        }
+        POOL.lazySet(stripe(), slab);
+    }
+
+    /**
+     * 从池中取出缓冲区, 池中没有时创建
+     *
+     * @return Slab
+     */
+    static Slab acquire() {
+        Slab slab = POOL.getAndSet(stripe(), null);
+        return slab != null ? slab : new Slab();
+    }
+
+    /**
+     * 当前线程对应的分段
+     *
+     * @return 分段下标
+     */
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * 可复用的缓冲区及字符集解码器
+     */
+    static final class Slab {
+
+        /**
+         * 字节缓冲区
+         */
+        byte[] bytes = new byte[INITIAL_SIZE];
+
+        /**
+         * 字节缓冲区中有效内容的长度
+         */
+        int length;
+
+        /**
+         * 字符缓冲区
+         */
+        private char[] chars = new char[INITIAL_SIZE];
+
+        /**
+         * 最近使用的字符集解码器
+         */
+        private CharsetDecoder decoder;
+
+        /**
+         * 获取字符集解码器, 字符集相同时复用
+         *
+         * @param charset 字符集
+         * @return CharsetDecoder
+         */
+        private CharsetDecoder decoder(Charset charset) {
+            if (decoder == null || !decoder.charset().equals(charset)) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            return decoder.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.fanlychie.commons.httpclient;
+
+/**
+ * 重试预算, 令牌桶实现: 每个请求向桶中存入一定比例的令牌, 每次重试取出一个令牌, 令牌不足时不再重试;
+ * 另外每秒补充固定数量的令牌, 使请求量很小时也能重试. 多个请求共用同一个预算时, 重试的数量不会超过请求总数的固定比例,
+ * 上游故障时不会因为重试而放大负载
+ */
+public class RetryBudget {
+
+    /**
+     * 每个请求存入的令牌数, 即允许的重试比例
+     */
+    private final double retryRatio;
+
+    /**
+     * 每秒补充的令牌数
+     */
+    private final double minRetriesPerSecond;
+
+    /**
+     * 令牌桶的容量
+     */
+    private final double capacity;
+
+    /**
+     * 当前的令牌数
+     */
+    private double tokens;
+
+    /**
+     * 上次补充令牌的时间, 单位纳秒
+     */
+    private long lastRefillTime = System.nanoTime();
+
+    /**
+     * 创建重试预算, 令牌桶的容量为每秒补充的令牌数的10倍且不少于10个
+     *
+     * @param retryRatio          允许的重试比例, 如 0.1 表示重试的数量不超过请求数量的10%
+     * @param minRetriesPerSecond 每秒至少允许的重试次数
+     */
+    public RetryBudget(double retryRatio, int minRetriesPerSecond) {
+        this(retryRatio, minRetriesPerSecond, Math.max(10, minRetriesPerSecond * 10));
+    }
+
+    /**
+     * 创建重试预算
+     *
+     * @param retryRatio          允许的重试比例, 如 0.1 表示重试的数量不超过请求数量的10%
+     * @param minRetriesPerSecond 每秒至少允许的重试次数
+     * @param capacity            令牌桶的容量, 即短时间内最多允许的连续重试次数
+     */
+    public RetryBudget(double retryRatio, int minRetriesPerSecond, int capacity) {
+        if (retryRatio < 0 || minRetriesPerSecond < 0 || capacity < 1) {
+            throw new IllegalArgumentException("retryRatio: " + retryRatio
+                    + ", minRetriesPerSecond: " + minRetriesPerSecond + ", capacity: " + capacity);
+        }
+        this.retryRatio = retryRatio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * 记录一次请求 ( 不含重试 ), 存入令牌
+     */
+    synchronized void onRequest() {
+        tokens = Math.min(capacity, tokens + retryRatio);
+    }
+
+    /**
+     * 尝试取出一次重试所需的令牌
+     *
+     * @return 令牌足够时返回 true
+     */
+    synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillTime) / 1e9 * minRetriesPerSecond);
+        lastRefillTime = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * 当前可用的重试次数
+     *
+     * @return 次数
+     */
+    public synchronized int getAvailable() {
+        return (int) tokens;
+    }
+
+}
@@ -0,0 +1,295 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 失败重试策略: 指数退避加随机抖动, 遵循 Retry-After 响应头, 按状态码和请求方法的幂等性决定是否重试,
+ * 重试次数受共享的 {@link RetryBudget} 限制. 策略对象只包含配置, 可以在多个请求之间共享
+ */
+public class RetryPolicy {
+
+    /**
+     * 幂等的请求方法
+     */
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(
+            "GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+
+    /**
+     * 429 Too Many Requests
+     */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * 未设置重试预算的策略共用的预算, 重试不超过请求的10%, 每秒至少允许10次重试
+     */
+    private static final RetryBudget SHARED_BUDGET = new RetryBudget(0.1, 10);
+
+    /**
+     * 最大重试次数, 默认3次
+     */
+    private int maxRetries = 3;
+
+    /**
+     * 第一次重试前的退避时间, 单位毫秒, 默认100毫秒, 之后每次翻倍
+     */
+    private long baseDelay = 100;
+
+    /**
+     * 退避时间的上限, 单位毫秒, 默认10秒
+     */
+    private long maxDelay = 10 * 1000;
+
+    /**
+     * 是否在退避时间内随机选择实际的等待时间 ( full jitter ), 默认是
+     */
+    private boolean jitter = true;
+
+    /**
+     * Retry-After 要求的等待时间的上限, 单位毫秒, 默认60秒; 超过时不再重试
+     */
+    private long maxRetryAfter = 60 * 1000;
+
+    /**
+     * 需要重试的响应状态码, 默认 429、502、503、504
+     */
+    private Set<Integer> retryStatuses = new HashSet<>(Arrays.asList(
+            SC_TOO_MANY_REQUESTS, HttpStatus.SC_BAD_GATEWAY,
+            HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_GATEWAY_TIMEOUT));
+
+    /**
+     * 是否重试非幂等的请求 ( 如 POST ), 默认否
+     */
+    private boolean retryNonIdempotent;
+
+    /**
+     * 重试预算
+     */
+    private RetryBudget budget = SHARED_BUDGET;
+
+    /**
+     * 设置最大重试次数, 默认3次
+     *
+     * @param maxRetries 最大重试次数
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * 设置退避时间, 第 n 次重试前的退避时间为 baseDelay * 2^(n-1), 不超过 maxDelay; 默认100毫秒至10秒
+     *
+     * @param baseDelay 第一次重试前的退避时间, 单位毫秒
+     * @param maxDelay  退避时间的上限, 单位毫秒
+     * @return RetryPolicy
+     */
+    public RetryPolicy setBackoff(long baseDelay, long maxDelay) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * 设置是否在退避时间内随机选择实际的等待时间, 默认是; 随机等待可以避免大量客户端同时重试
+     *
+     * @param jitter 是否随机等待
+     * @return RetryPolicy
+     */
+    public RetryPolicy setJitter(boolean jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * 设置 Retry-After 要求的等待时间的上限, 默认60秒; 服务器要求的等待时间超过上限时不再重试
+     *
+     * @param maxRetryAfter 等待时间的上限, 单位毫秒
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMaxRetryAfter(long maxRetryAfter) {
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    /**
+     * 设置需要重试的响应状态码, 默认 429、502、503、504
+     *
+     * @param statusCodes 状态码
+     * @return RetryPolicy
+     */
+    public RetryPolicy setRetryStatuses(int... statusCodes) {
+        Set<Integer> statuses = new HashSet<>();
+        for (int statusCode : statusCodes) {
+            statuses.add(statusCode);
+        }
+        this.retryStatuses = statuses;
+        return this;
+    }
+
+    /**
+     * 设置是否重试非幂等的请求, 默认否; 不重试时非幂等的请求只在连接没有建立或服务器返回 429 ( 请求未被处理 ) 时重试
+     *
+     * @param retryNonIdempotent 是否重试非幂等的请求
+     * @return RetryPolicy
+     */
+    public RetryPolicy setRetryNonIdempotent(boolean retryNonIdempotent) {
+        this.retryNonIdempotent = retryNonIdempotent;
+        return this;
+    }
+
+    /**
+     * 设置重试预算, 默认所有策略共用一个预算 ( 重试不超过请求的10%, 每秒至少允许10次重试 ); 为 null 时不限制
+     *
+     * @param budget 重试预算
+     * @return RetryPolicy
+     */
+    public RetryPolicy setBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * 记录一次请求 ( 不含重试 )
+     */
+    void onRequest() {
+        if (budget != null) {
+            budget.onRequest();
+        }
+    }
+
+    /**
+     * 响应之后是否应该重试
+     *
+     * @param request    HTTP 请求
+     * @param statusCode 响应状态码
+     * @param retries    已重试的次数
+     * @return 需要重试时返回 true
+     */
+    boolean shouldRetry(HttpRequest request, int statusCode, int retries) {
+        if (retries >= maxRetries || !retryStatuses.contains(statusCode) || !isRepeatable(request)) {
+            return false;
+        }
+        // 429 表示请求被拒绝而未被处理, 非幂等的请求也可以安全重试
+        if (statusCode != SC_TOO_MANY_REQUESTS && !isIdempotent(request)) {
+            return false;
+        }
+        return acquire();
+    }
+
+    /**
+     * 出现 I/O 异常之后是否应该重试
+     *
+     * @param request   HTTP 请求
+     * @param exception I/O 异常
+     * @param retries   已重试的次数
+     * @return 需要重试时返回 true
+     */
+    boolean shouldRetry(HttpRequest request, IOException exception, int retries) {
+        if (retries >= maxRetries || !isRepeatable(request)) {
+            return false;
+        }
+        // 连接没有建立时请求一定未发出, 任何请求都可以重试
+        if (!(exception instanceof ConnectException || exception instanceof ConnectTimeoutException)) {
+            // 重试无法恢复的异常
+            if (exception instanceof UnknownHostException || exception instanceof SSLException
+                    || exception instanceof InterruptedIOException) {
+                return false;
+            }
+            if (!isIdempotent(request)) {
+                return false;
+            }
+        }
+        return acquire();
+    }
+
+    /**
+     * 第 n 次重试前的等待时间
+     *
+     * @param retries  已重试的次数
+     * @param response 触发重试的响应, 可以为 null
+     * @return 等待时间, 单位毫秒; Retry-After 要求的等待时间超过上限时返回 -1
+     */
+    long getDelay(int retries, HttpResponse response) {
+        long retryAfter = response != null ? getRetryAfter(response) : -1;
+        if (retryAfter > maxRetryAfter) {
+            return -1;
+        }
+        long delay = Math.min(maxDelay, baseDelay << Math.min(retries, 30));
+        if (jitter && delay > 0) {
+            delay = ThreadLocalRandom.current().nextLong(delay + 1);
+        }
+        return Math.max(delay, retryAfter);
+    }
+
+    /**
+     * 从重试预算中取出令牌
+     *
+     * @return 令牌足够或没有设置预算时返回 true
+     */
+    private boolean acquire() {
+        return budget == null || budget.tryAcquire();
+    }
+
+    /**
+     * 请求方法是否幂等
+     *
+     * @param request HTTP 请求
+     * @return 幂等或允许重试非幂等的请求时返回 true
+     */
+    private boolean isIdempotent(HttpRequest request) {
+        return retryNonIdempotent || IDEMPOTENT_METHODS.contains(request.getRequestLine().getMethod());
+    }
+
+    /**
+     * 请求内容是否可以重复发送
+     *
+     * @param request HTTP 请求
+     * @return 没有请求内容或请求内容可以重复发送时返回 true
+     */
+    private static boolean isRepeatable(HttpRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+            return entityRequest.getEntity() == null || entityRequest.getEntity().isRepeatable();
+        }
+        return true;
+    }
+
+    /**
+     * 解析 Retry-After 响应头, 支持秒数和 HTTP 日期两种格式
+     *
+     * @param response HTTP 响应
+     * @return 等待时间, 单位毫秒; 没有或无法解析时返回 -1
+     */
+    private static long getRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+}
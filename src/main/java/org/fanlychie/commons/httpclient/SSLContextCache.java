@@ -0,0 +1,305 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 进程内共享的 SSL 上下文缓存, 按信任材料和密钥材料缓存 SSL 上下文及其连接工厂;
+ * 同一个 SSL 上下文连接同一主机时可以复用 TLS 会话, 省去完整的握手
+ */
+final class SSLContextCache {
+
+    /**
+     * 已创建的 SSL 上下文, 密钥库被回收后对应的条目随之移除
+     */
+    private static final ConcurrentMap<Material, SSLContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    /**
+     * 已创建的 SSL 连接工厂
+     */
+    private static final ConcurrentMap<SSLContext, LayeredConnectionSocketFactory> SOCKET_FACTORIES = new ConcurrentHashMap<>();
+
+    /**
+     * 被回收的密钥库的引用
+     */
+    private static final ReferenceQueue<KeyStore> RELEASED = new ReferenceQueue<>();
+
+    /**
+     * 已加载的密钥库, 以文件的绝对路径和密码的摘要为键, 不在内存中保留密码明文
+     */
+    private static final ConcurrentMap<String, KeyStore> KEY_STORES = new ConcurrentHashMap<>();
+
+    /**
+     * TLS 会话缓存的最大数量, 默认1000
+     */
+    private static volatile int sessionCacheSize = 1000;
+
+    /**
+     * TLS 会话缓存的超时时间, 单位秒, 默认1小时
+     */
+    private static volatile int sessionTimeout = 60 * 60;
+
+    /**
+     * 私有化
+     */
+    private SSLContextCache() {
+
+    }
+
+    /**
+     * 获取 SSL 上下文, 不存在时创建
+     *
+     * @param trustAll    是否信任所有证书, 为 false 且没有指定信任库时使用 JDK 默认的信任库
+     * @param trustStore  信任库, 可以为 null
+     * @param keyStore    客户端证书的密钥库, 可以为 null
+     * @param keyPassword 密钥的密码
+     * @return SSLContext
+     */
+    static SSLContext getContext(boolean trustAll, KeyStore trustStore, KeyStore keyStore, char[] keyPassword) {
+        purge();
+        // 复制一份密码, 用完即清空; 缓存的键只保留密码的摘要
+        char[] password = keyPassword != null ? keyPassword.clone() : null;
+        try {
+            Material material = new Material(trustAll, trustStore, keyStore, digest(password));
+            return CONTEXTS.computeIfAbsent(material, m -> createContext(trustAll, trustStore, keyStore, password));
+        } finally {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    /**
+     * 获取 SSL 上下文对应的 SSL 连接工厂, 不存在时创建
+     *
+     * @param sslContext SSL 上下文
+     * @return LayeredConnectionSocketFactory
+     */
+    static LayeredConnectionSocketFactory getSocketFactory(SSLContext sslContext) {
+        return SOCKET_FACTORIES.computeIfAbsent(sslContext, SSLConnectionSocketFactory::new);
+    }
+
+    /**
+     * 加载密钥库文件, 同一个文件只加载一次
+     *
+     * @param path     密钥库文件
+     * @param password 密钥库的密码
+     * @return KeyStore
+     */
+    static KeyStore loadKeyStore(Path path, String password) {
+        String key = path.toAbsolutePath().normalize() + "\n" + digest(password != null ? password.toCharArray() : null);
+        return KEY_STORES.computeIfAbsent(key, k -> {
+            try (InputStream in = Files.newInputStream(path)) {
+                KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                keyStore.load(in, password != null ? password.toCharArray() : null);
+                return keyStore;
+            } catch (Exception e) {
+                throw new RuntimeCastException(e);
+            }
+        });
+    }
+
+    /**
+     * 计算密码的摘要
+     *
+     * @param password 密码, 可以为 null
+     * @return 密码的 SHA-256 摘要的 Base64 编码, 密码为 null 时返回空字符串
+     */
+    private static String digest(char[] password) {
+        if (password == null) {
+            return "";
+        }
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(bytes.duplicate());
+            return Base64.getEncoder().encodeToString(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeCastException(e);
+        } finally {
+            // 清空编码后的密码
+            bytes.clear();
+            while (bytes.hasRemaining()) {
+                bytes.put((byte) 0);
+            }
+        }
+    }
+
+    /**
+     * 移除密钥库已被回收的 SSL 上下文及其连接工厂
+     */
+    private static void purge() {
+        Reference<? extends KeyStore> reference;
+        while ((reference = RELEASED.poll()) != null) {
+            SSLContext sslContext = CONTEXTS.remove(((StoreReference) reference).material);
+            if (sslContext != null) {
+                SOCKET_FACTORIES.remove(sslContext);
+            }
+        }
+    }
+
+    /**
+     * 设置 TLS 会话缓存, 同时作用于已创建的 SSL 上下文
+     *
+     * @param size    会话缓存的最大数量
+     * @param timeout 会话缓存的超时时间, 单位秒
+     */
+    static void setSessionCache(int size, int timeout) {
+        sessionCacheSize = size;
+        sessionTimeout = timeout;
+        CONTEXTS.values().forEach(SSLContextCache::configureSessionCache);
+    }
+
+    /**
+     * 创建 SSL 上下文
+     *
+     * @param trustAll    是否信任所有证书
+     * @param trustStore  信任库, 可以为 null
+     * @param keyStore    客户端证书的密钥库, 可以为 null
+     * @param keyPassword 密钥的密码
+     * @return SSLContext
+     */
+    private static SSLContext createContext(boolean trustAll, KeyStore trustStore, KeyStore keyStore, char[] keyPassword) {
+        try {
+            SSLContextBuilder builder = new SSLContextBuilder();
+            if (trustStore != null) {
+                builder.loadTrustMaterial(trustStore, null);
+            } else if (trustAll) {
+                builder.loadTrustMaterial(null, new TrustStrategy() {
+                    // 信任所有
+                    public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                        return true;
+                    }
+                });
+            }
+            if (keyStore != null) {
+                builder.loadKeyMaterial(keyStore, keyPassword);
+            }
+            SSLContext sslContext = builder.build();
+            configureSessionCache(sslContext);
+            return sslContext;
+        } catch (Exception e) {
+            throw new RuntimeCastException(e);
+        }
+    }
+
+    /**
+     * 设置 SSL 上下文的客户端会话缓存
+     *
+     * @param sslContext SSL 上下文
+     */
+    private static void configureSessionCache(SSLContext sslContext) {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+    }
+
+    /**
+     * 信任材料和密钥材料, 密钥库按对象标识比较并以弱引用持有, 不阻止密钥库被回收; 密码只保留摘要
+     */
+    private static final class Material {
+
+        private final boolean trustAll;
+
+        private final StoreReference trustStore;
+
+        private final StoreReference keyStore;
+
+        private final String passwordDigest;
+
+        private final int hash;
+
+        Material(boolean trustAll, KeyStore trustStore, KeyStore keyStore, String passwordDigest) {
+            this.trustAll = trustAll;
+            this.trustStore = trustStore != null ? new StoreReference(trustStore, this) : null;
+            this.keyStore = keyStore != null ? new StoreReference(keyStore, this) : null;
+            this.passwordDigest = passwordDigest;
+            // 密钥库被回收后仍要能按原来的散列值移除条目
+            int result = Boolean.hashCode(trustAll);
+            result = 31 * result + System.identityHashCode(trustStore);
+            result = 31 * result + System.identityHashCode(keyStore);
+            result = 31 * result + passwordDigest.hashCode();
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Material)) {
+                return false;
+            }
+            Material that = (Material) o;
+            return trustAll == that.trustAll
+                    && same(trustStore, that.trustStore)
+                    && same(keyStore, that.keyStore)
+                    && passwordDigest.equals(that.passwordDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * 是否引用同一个密钥库, 已被回收的密钥库与任何密钥库都不相同
+         *
+         * @param a 密钥库的引用, 可以为 null
+         * @param b 密钥库的引用, 可以为 null
+         * @return 相同返回 true
+         */
+        private static boolean same(StoreReference a, StoreReference b) {
+            if (a == null || b == null) {
+                return a == b;
+            }
+            KeyStore store = a.get();
+            return store != null && store == b.get();
+        }
+
+    }
+
+    /**
+     * 密钥库的弱引用, 被回收后据此移除所属的条目
+     */
+    private static final class StoreReference extends WeakReference<KeyStore> {
+
+        /**
+         * 所属的信任材料和密钥材料
+         */
+        private final Material material;
+
+        StoreReference(KeyStore store, Material material) {
+            super(store, RELEASED);
+            this.material = material;
+        }
+
+    }
+
+}
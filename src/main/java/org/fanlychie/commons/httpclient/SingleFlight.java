@@ -0,0 +1,64 @@
+package org.fanlychie.commons.httpclient;
+
+import org.fanlychie.commons.httpclient.exception.RuntimeCastException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并, 键相同的并发请求只有第一个真正发往服务器, 其余的等待并共享它的结果
+ */
+final class SingleFlight {
+
+    /**
+     * 进行中的请求
+     */
+    private static final ConcurrentMap<Object, CompletableFuture<HttpResult>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /**
+     * 私有化
+     */
+    private SingleFlight() {
+
+    }
+
+    /**
+     * 执行请求, 已有相同键的请求在进行中时等待它的结果
+     *
+     * @param key  请求的键, 按 equals 比较
+     * @param call 真正发起请求的操作
+     * @return 请求结果
+     */
+    static HttpResult execute(Object key, Supplier<HttpResult> call) {
+        CompletableFuture<HttpResult> own = new CompletableFuture<>();
+        CompletableFuture<HttpResult> inFlight = IN_FLIGHT.putIfAbsent(key, own);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new RuntimeCastException(e.getCause());
+            }
+        }
+        try {
+            HttpResult result = call.get();
+            own.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // 包括 Error 在内的任何异常都要结束共享的结果, 否则等待中的请求永远阻塞
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, own);
+        }
+    }
+
+}
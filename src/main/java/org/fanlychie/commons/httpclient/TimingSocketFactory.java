@@ -0,0 +1,113 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * 记录 TCP 连接和 TLS 握手耗时的连接工厂, 包装实际的连接工厂; 只有实际的工厂是 SSL 连接工厂时才是
+ * {@link LayeredConnectionSocketFactory}
+ *
+ * @see #wrap(ConnectionSocketFactory)
+ */
+class TimingSocketFactory implements ConnectionSocketFactory {
+
+    /**
+     * 实际的连接工厂
+     */
+    final ConnectionSocketFactory delegate;
+
+    /**
+     * 包装连接工厂
+     *
+     * @param delegate 实际的连接工厂
+     */
+    private TimingSocketFactory(ConnectionSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 包装连接工厂, SSL 连接工厂包装后仍是 SSL 连接工厂
+     *
+     * @param delegate 实际的连接工厂
+     * @return ConnectionSocketFactory
+     */
+    static ConnectionSocketFactory wrap(ConnectionSocketFactory delegate) {
+        if (delegate instanceof LayeredConnectionSocketFactory) {
+            return new Layered((LayeredConnectionSocketFactory) delegate);
+        }
+        return new TimingSocketFactory(delegate);
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return delegate.createSocket(context);
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, HttpContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+        } finally {
+            RequestMetrics.recordConnect(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 包装 SSL 连接工厂. 实际的工厂正是 {@link SSLConnectionSocketFactory} 时, 按与它相同的步骤先建立 TCP 连接,
+     * 再由它在其上完成 TLS 握手, 以便分别计时; 其他工厂 ( 如重写了 connectSocket 的子类 ) 直接调用其 connectSocket,
+     * 整个耗时计为连接耗时
+     */
+    private static final class Layered extends TimingSocketFactory implements LayeredConnectionSocketFactory {
+
+        Layered(LayeredConnectionSocketFactory delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            Socket sock = socket != null ? socket : delegate.createSocket(context);
+            if (delegate.getClass() != SSLConnectionSocketFactory.class || sock instanceof SSLSocket) {
+                return super.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            }
+            if (localAddress != null) {
+                sock.bind(localAddress);
+            }
+            long start = System.nanoTime();
+            try {
+                if (connectTimeout > 0 && sock.getSoTimeout() == 0) {
+                    sock.setSoTimeout(connectTimeout);
+                }
+                sock.connect(remoteAddress, connectTimeout);
+            } catch (IOException e) {
+                sock.close();
+                throw e;
+            } finally {
+                RequestMetrics.recordConnect(System.nanoTime() - start);
+            }
+            return createLayeredSocket(sock, host.getHostName(), remoteAddress.getPort(), context);
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return ((LayeredConnectionSocketFactory) delegate).createLayeredSocket(socket, target, port, context);
+            } finally {
+                RequestMetrics.recordTls(System.nanoTime() - start);
+            }
+        }
+
+    }
+
+}
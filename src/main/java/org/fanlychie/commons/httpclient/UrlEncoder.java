@@ -0,0 +1,286 @@
+package org.fanlychie.commons.httpclient;
+
+import org.apache.http.NameValuePair;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 查询参数和 application/x-www-form-urlencoded 表单的编码器: 查表判断字符是否需要编码, 以 UTF-8 直接百分号编码到
+ * 池化的字节缓冲区 ( 复用响应解码器的分段池 ) 中, 不经过中间的字符串和字符集编码器. 编码规则与
+ * {@link java.net.URLEncoder} 和 URLEncodedUtils 相同: 字母、数字和 -._* 不编码, 空格编码为 +
+ */
+final class UrlEncoder {
+
+    /**
+     * 表单和查询参数中不需要编码的 ASCII 字符
+     */
+    private static final boolean[] FORM_SAFE = new boolean[128];
+
+    /**
+     * 路径中不需要编码的 ASCII 字符
+     */
+    private static final boolean[] PATH_SAFE = new boolean[128];
+
+    /**
+     * 十六进制数字
+     */
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 单个字符编码后的最大字节数 ( 3个 UTF-8 字节, 每个编码为 %XX )
+     */
+    private static final int MAX_BYTES_PER_CHAR = 9;
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            FORM_SAFE[c] = PATH_SAFE[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            FORM_SAFE[c] = PATH_SAFE[c] = true;
+            FORM_SAFE[c - 32] = PATH_SAFE[c - 32] = true;
+        }
+        for (char c : "-._*".toCharArray()) {
+            FORM_SAFE[c] = true;
+        }
+        for (char c : "-._~".toCharArray()) {
+            PATH_SAFE[c] = true;
+        }
+    }
+
+    /**
+     * 私有化
+     */
+    private UrlEncoder() {
+
+    }
+
+    /**
+     * 将参数编码后追加到已有的地址上, 地址原有的查询参数和片段 ( # 之后的部分 ) 保留, 不拆分和重新解析原地址
+     *
+     * @param uri        原地址
+     * @param parameters 参数
+     * @return 新的地址
+     */
+    static URI appendQuery(URI uri, List<? extends NameValuePair> parameters) {
+        if (parameters.isEmpty()) {
+            return uri;
+        }
+        String base = uri.toASCIIString();
+        int fragment = base.indexOf('#');
+        int end = fragment < 0 ? base.length() : fragment;
+        int query = base.indexOf('?');
+        if (query > end) {
+            // 片段中的 ?
+            query = -1;
+        }
+        ResponseDecoder.Slab slab = ResponseDecoder.acquire();
+        try {
+            int length = ascii(base, 0, end, slab, 0);
+            boolean separator = query >= 0;
+            if (!separator) {
+                slab.bytes[length++] = '?';
+            } else if (query == end - 1 || base.charAt(end - 1) == '&') {
+                // 以 ? 或 & 结尾时不再添加 &
+                separator = false;
+            }
+            length = encodeParameters(parameters, separator, slab, length);
+            if (fragment >= 0) {
+                length = ascii(base, fragment, base.length(), slab, length);
+            }
+            return URI.create(new String(slab.bytes, 0, length, StandardCharsets.ISO_8859_1));
+        } finally {
+            ResponseDecoder.release(slab);
+        }
+    }
+
+    /**
+     * 将参数编码为 application/x-www-form-urlencoded 表单
+     *
+     * @param parameters 参数
+     * @return 表单内容
+     */
+    static byte[] encodeForm(List<? extends NameValuePair> parameters) {
+        ResponseDecoder.Slab slab = ResponseDecoder.acquire();
+        try {
+            int length = encodeParameters(parameters, false, slab, 0);
+            return Arrays.copyOf(slab.bytes, length);
+        } finally {
+            ResponseDecoder.release(slab);
+        }
+    }
+
+    /**
+     * 按表单的规则编码, 空格编码为 +
+     *
+     * @param text 文本
+     * @return 编码后的文本
+     */
+    static String encode(String text) {
+        return encode(text, FORM_SAFE, true);
+    }
+
+    /**
+     * 按路径的规则编码, 空格编码为 %20, / 同样被编码
+     *
+     * @param text 文本
+     * @return 编码后的文本
+     */
+    static String encodePath(String text) {
+        return encode(text, PATH_SAFE, false);
+    }
+
+    /**
+     * 编码文本
+     *
+     * @param text        文本
+     * @param safe        不需要编码的字符
+     * @param spaceAsPlus 空格是否编码为 +
+     * @return 编码后的文本
+     */
+    private static String encode(String text, boolean[] safe, boolean spaceAsPlus) {
+        int n = text.length();
+        int i = 0;
+        // 不需要编码时直接返回原文本
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c >= 128 || !safe[c]) {
+                break;
+            }
+            i++;
+        }
+        if (i == n) {
+            return text;
+        }
+        ResponseDecoder.Slab slab = ResponseDecoder.acquire();
+        try {
+            ensureCapacity(slab, n * MAX_BYTES_PER_CHAR);
+            int length = encode(text, safe, spaceAsPlus, slab.bytes, 0);
+            return new String(slab.bytes, 0, length, StandardCharsets.ISO_8859_1);
+        } finally {
+            ResponseDecoder.release(slab);
+        }
+    }
+
+    /**
+     * 编码参数, 参数之间以 &amp; 分隔
+     *
+     * @param parameters 参数
+     * @param separator  第一个参数前是否添加 &amp;
+     * @param slab       缓冲区
+     * @param offset     写入的起始位置
+     * @return 写入后的长度
+     */
+    private static int encodeParameters(List<? extends NameValuePair> parameters, boolean separator,
+                                        ResponseDecoder.Slab slab, int offset) {
+        int length = offset;
+        for (NameValuePair parameter : parameters) {
+            String name = parameter.getName();
+            String value = parameter.getValue();
+            ensureCapacity(slab, length + 2 + (name.length() + (value != null ? value.length() : 0)) * MAX_BYTES_PER_CHAR);
+            if (separator) {
+                slab.bytes[length++] = '&';
+            }
+            separator = true;
+            length = encode(name, FORM_SAFE, true, slab.bytes, length);
+            if (value != null) {
+                slab.bytes[length++] = '=';
+                length = encode(value, FORM_SAFE, true, slab.bytes, length);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 以 UTF-8 百分号编码文本, 调用方确保缓冲区足够大
+     *
+     * @param text        文本
+     * @param safe        不需要编码的字符
+     * @param spaceAsPlus 空格是否编码为 +
+     * @param out         缓冲区
+     * @param offset      写入的起始位置
+     * @return 写入后的位置
+     */
+    private static int encode(String text, boolean[] safe, boolean spaceAsPlus, byte[] out, int offset) {
+        int pos = offset;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                if (safe[c]) {
+                    out[pos++] = (byte) c;
+                } else if (c == ' ' && spaceAsPlus) {
+                    out[pos++] = '+';
+                } else {
+                    pos = percent(out, pos, c);
+                }
+            } else if (c < 0x800) {
+                pos = percent(out, pos, 0xC0 | (c >> 6));
+                pos = percent(out, pos, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                pos = percent(out, pos, 0xF0 | (codePoint >> 18));
+                pos = percent(out, pos, 0x80 | ((codePoint >> 12) & 0x3F));
+                pos = percent(out, pos, 0x80 | ((codePoint >> 6) & 0x3F));
+                pos = percent(out, pos, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符按 String.getBytes 的方式替换为 ?
+                pos = percent(out, pos, '?');
+            } else {
+                pos = percent(out, pos, 0xE0 | (c >> 12));
+                pos = percent(out, pos, 0x80 | ((c >> 6) & 0x3F));
+                pos = percent(out, pos, 0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 写入一个字节的百分号编码
+     *
+     * @param out 缓冲区
+     * @param pos 写入的位置
+     * @param b   字节
+     * @return 写入后的位置
+     */
+    private static int percent(byte[] out, int pos, int b) {
+        out[pos] = '%';
+        out[pos + 1] = HEX[(b >> 4) & 0x0F];
+        out[pos + 2] = HEX[b & 0x0F];
+        return pos + 3;
+    }
+
+    /**
+     * 复制 ASCII 字符串的一部分
+     *
+     * @param text   字符串
+     * @param start  起始位置
+     * @param end    结束位置
+     * @param slab   缓冲区
+     * @param offset 写入的起始位置
+     * @return 写入后的长度
+     */
+    private static int ascii(String text, int start, int end, ResponseDecoder.Slab slab, int offset) {
+        ensureCapacity(slab, offset + end - start + 1);
+        byte[] out = slab.bytes;
+        int pos = offset;
+        for (int i = start; i < end; i++) {
+            out[pos++] = (byte) text.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * 确保缓冲区的容量, 不足时扩容并保留已有内容
+     *
+     * @param slab     缓冲区
+     * @param capacity 需要的容量
+     */
+    private static void ensureCapacity(ResponseDecoder.Slab slab, int capacity) {
+        if (slab.bytes.length < capacity) {
+            slab.bytes = Arrays.copyOf(slab.bytes, Math.max(capacity, slab.bytes.length << 1));
+        }
+    }
+
+}
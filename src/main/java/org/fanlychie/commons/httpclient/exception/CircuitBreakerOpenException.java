@@ -0,0 +1,27 @@
+package org.fanlychie.commons.httpclient.exception;
+
+/**
+ * 熔断器处于打开状态, 请求未发出即被拒绝
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    /**
+     * 被熔断的主机
+     */
+    private final String host;
+
+    public CircuitBreakerOpenException(String host) {
+        super("circuit breaker is open for " + host);
+        this.host = host;
+    }
+
+    /**
+     * 被熔断的主机
+     *
+     * @return 主机, 格式为 scheme://host:port
+     */
+    public String getHost() {
+        return host;
+    }
+
+}
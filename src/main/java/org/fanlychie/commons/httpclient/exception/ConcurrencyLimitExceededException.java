@@ -0,0 +1,42 @@
+package org.fanlychie.commons.httpclient.exception;
+
+/**
+ * 发往同一主机的并发请求数达到自适应并发限制, 请求未发出即被拒绝
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    /**
+     * 请求的主机
+     */
+    private final String host;
+
+    /**
+     * 拒绝时的并发限制
+     */
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(String host, int limit) {
+        super("concurrency limit " + limit + " exceeded for " + host);
+        this.host = host;
+        this.limit = limit;
+    }
+
+    /**
+     * 请求的主机
+     *
+     * @return 主机, 格式为 scheme://host:port
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 拒绝时的并发限制
+     *
+     * @return 并发限制
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+}
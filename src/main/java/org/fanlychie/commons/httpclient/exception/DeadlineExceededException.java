@@ -0,0 +1,27 @@
+package org.fanlychie.commons.httpclient.exception;
+
+/**
+ * 请求未能在设置的总时限内完成 ( 包括等待连接、建立连接、重试和读取响应内容 ), 连接已被断开, 不会归还到连接池中复用
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    /**
+     * 总时限, 单位毫秒
+     */
+    private final long deadline;
+
+    public DeadlineExceededException(long deadline) {
+        super("request deadline of " + deadline + "ms exceeded");
+        this.deadline = deadline;
+    }
+
+    /**
+     * 总时限
+     *
+     * @return 总时限, 单位毫秒
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.fanlychie.commons.httpclient.exception;
+
+/**
+ * 响应的状态行和响应头超过了请求设置的最大字节数, 连接已被断开, 不会归还到连接池中复用
+ */
+public class ResponseHeaderTooLargeException extends RuntimeException {
+
+    /**
+     * 最大字节数
+     */
+    private final int limit;
+
+    public ResponseHeaderTooLargeException(int limit) {
+        super("response headers exceed limit of " + limit + " bytes");
+        this.limit = limit;
+    }
+
+    /**
+     * 最大字节数
+     *
+     * @return 字节数
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+}
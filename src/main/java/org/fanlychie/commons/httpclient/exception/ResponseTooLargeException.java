@@ -0,0 +1,42 @@
+package org.fanlychie.commons.httpclient.exception;
+
+/**
+ * 响应内容超过了请求设置的最大字节数, 连接已被断开, 不会归还到连接池中复用
+ */
+public class ResponseTooLargeException extends RuntimeException {
+
+    /**
+     * 最大字节数
+     */
+    private final long limit;
+
+    /**
+     * 声明的内容长度或中止时已读取的字节数
+     */
+    private final long size;
+
+    public ResponseTooLargeException(long limit, long size) {
+        super("response body of " + size + " bytes exceeds limit of " + limit + " bytes");
+        this.limit = limit;
+        this.size = size;
+    }
+
+    /**
+     * 最大字节数
+     *
+     * @return 字节数
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * 响应内容的字节数, 响应声明了 Content-Length 时为声明的长度, 否则为中止时已读取的字节数 ( 解压后 )
+     *
+     * @return 字节数
+     */
+    public long getSize() {
+        return size;
+    }
+
+}
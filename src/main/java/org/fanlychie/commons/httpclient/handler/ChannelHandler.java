@@ -0,0 +1,23 @@
+package org.fanlychie.commons.httpclient.handler;
+
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 响应通道处理器, 以 NIO 通道的方式读取响应内容
+ *
+ * @param <T> 处理结果的类型
+ */
+@FunctionalInterface
+public interface ChannelHandler<T> {
+
+    /**
+     * 处理响应通道
+     *
+     * @param statusCode 请求结果的状态码
+     * @param channel    响应内容的通道, 由调用方负责关闭
+     * @return 处理结果
+     * @throws Exception
+     */
+    T handle(int statusCode, ReadableByteChannel channel) throws Exception;
+
+}
@@ -0,0 +1,21 @@
+package org.fanlychie.commons.httpclient.handler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 响应分块处理器, 逐块处理响应内容; 上一块处理完成之前不会读取下一块, 处理的快慢即决定读取的快慢
+ */
+@FunctionalInterface
+public interface ChunkHandler {
+
+    /**
+     * 处理一块响应内容
+     *
+     * @param statusCode 请求结果的状态码
+     * @param chunk      响应内容块, 可读的部分为本次读取的内容, 方法返回后会被复用
+     * @return 返回 true 继续读取下一块, 返回 false 停止读取并断开连接
+     * @throws Exception
+     */
+    boolean handle(int statusCode, ByteBuffer chunk) throws Exception;
+
+}
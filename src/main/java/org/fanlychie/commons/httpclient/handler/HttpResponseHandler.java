@@ -0,0 +1,23 @@
+package org.fanlychie.commons.httpclient.handler;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * 响应处理器, 直接处理响应实体, 不会预先把响应内容读入内存
+ *
+ * @param <T> 处理结果的类型
+ */
+@FunctionalInterface
+public interface HttpResponseHandler<T> {
+
+    /**
+     * 处理响应
+     *
+     * @param statusCode 请求结果的状态码
+     * @param entity     响应实体, 没有响应内容时为 null
+     * @return 处理结果
+     * @throws Exception
+     */
+    T handle(int statusCode, HttpEntity entity) throws Exception;
+
+}
@@ -0,0 +1,23 @@
+package org.fanlychie.commons.httpclient.handler;
+
+import java.io.InputStream;
+
+/**
+ * 响应流处理器, 直接读取响应内容的原始输入流
+ *
+ * @param <T> 处理结果的类型
+ */
+@FunctionalInterface
+public interface StreamHandler<T> {
+
+    /**
+     * 处理响应流
+     *
+     * @param statusCode 请求结果的状态码
+     * @param in         响应内容的输入流, 由调用方负责关闭
+     * @return 处理结果
+     * @throws Exception
+     */
+    T handle(int statusCode, InputStream in) throws Exception;
+
+}
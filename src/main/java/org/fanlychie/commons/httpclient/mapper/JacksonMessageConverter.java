@@ -0,0 +1,65 @@
+package org.fanlychie.commons.httpclient.mapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Consts;
+import org.apache.http.entity.ContentType;
+import org.fanlychie.commons.httpclient.ContentTypeConstant;
+
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * 基于 Jackson 的 JSON 消息转换器, 使用流式解析, 需要自行引入 jackson-databind 依赖
+ */
+public class JacksonMessageConverter implements MessageConverter {
+
+    /**
+     * Jackson ObjectMapper
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 使用默认配置的 ObjectMapper 创建转换器
+     */
+    public JacksonMessageConverter() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * 创建转换器
+     *
+     * @param objectMapper Jackson ObjectMapper
+     */
+    public JacksonMessageConverter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public ContentType getContentType() {
+        return ContentTypeConstant.APPLICATION_JSON;
+    }
+
+    @Override
+    public <T> ResponseMapper<T> getMapper(Class<T> type) {
+        return (in, charset) -> {
+            // UTF-8 时直接解析字节流, 其他字符集才需要解码
+            if (charset == null || Consts.UTF_8.equals(charset)) {
+                return objectMapper.readValue(in, type);
+            }
+            return objectMapper.readValue(new InputStreamReader(in, charset), type);
+        };
+    }
+
+    @Override
+    public void write(Object value, OutputStream out) throws Exception {
+        if (Consts.UTF_8.equals(getContentType().getCharset())) {
+            objectMapper.writeValue(out, value);
+        } else {
+            Writer writer = new OutputStreamWriter(out, getContentType().getCharset());
+            objectMapper.writeValue(writer, value);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.fanlychie.commons.httpclient.mapper;
+
+import org.apache.http.entity.ContentType;
+
+import java.io.OutputStream;
+
+/**
+ * 消息转换器, 负责某一种内容类型 ( 如 JSON、XML ) 的请求内容序列化和响应内容反序列化
+ */
+public interface MessageConverter {
+
+    /**
+     * 支持的内容类型, 其字符集同时用于请求内容的序列化
+     *
+     * @return ContentType
+     */
+    ContentType getContentType();
+
+    /**
+     * 获取指定类型的响应映射器
+     *
+     * @param type 对象的类型
+     * @param <T>  对象的类型
+     * @return ResponseMapper
+     */
+    <T> ResponseMapper<T> getMapper(Class<T> type);
+
+    /**
+     * 序列化请求内容
+     *
+     * @param value 对象
+     * @param out   输出流, 使用 {@link #getContentType()} 的字符集
+     * @throws Exception
+     */
+    void write(Object value, OutputStream out) throws Exception;
+
+}
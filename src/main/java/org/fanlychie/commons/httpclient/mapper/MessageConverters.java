@@ -0,0 +1,78 @@
+package org.fanlychie.commons.httpclient.mapper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 消息转换器注册表, 类路径中存在 Jackson 时自动注册 {@link JacksonMessageConverter}
+ */
+public final class MessageConverters {
+
+    /**
+     * 已注册的转换器, 先注册的优先
+     */
+    private static final List<MessageConverter> CONVERTERS = new CopyOnWriteArrayList<>();
+
+    static {
+        try {
+            Class.forName("com.fasterxml.jackson.databind.ObjectMapper", false, MessageConverters.class.getClassLoader());
+            CONVERTERS.add(new JacksonMessageConverter());
+        } catch (ClassNotFoundException e) {
+            // 没有引入 Jackson
+        }
+    }
+
+    /**
+     * 私有化
+     */
+    private MessageConverters() {
+
+    }
+
+    /**
+     * 注册转换器, 替换已注册的相同内容类型的转换器
+     *
+     * @param converter 消息转换器
+     */
+    public static synchronized void register(MessageConverter converter) {
+        String mimeType = converter.getContentType().getMimeType();
+        for (MessageConverter registered : CONVERTERS) {
+            if (registered.getContentType().getMimeType().equalsIgnoreCase(mimeType)) {
+                CONVERTERS.remove(registered);
+            }
+        }
+        CONVERTERS.add(0, converter);
+    }
+
+    /**
+     * 查找转换器
+     *
+     * @param mimeType 内容类型, 为 null 时返回第一个转换器
+     * @return 找不到对应的转换器或没有注册任何转换器时返回 null
+     */
+    public static MessageConverter find(String mimeType) {
+        if (mimeType != null) {
+            return findExact(mimeType);
+        }
+        for (MessageConverter registered : CONVERTERS) {
+            return registered;
+        }
+        return null;
+    }
+
+    /**
+     * 查找与内容类型完全匹配的转换器
+     *
+     * @param mimeType 内容类型
+     * @return 找不到时返回 null
+     */
+    public static MessageConverter findExact(String mimeType) {
+        for (MessageConverter converter : CONVERTERS) {
+            if (converter.getContentType().getMimeType().equalsIgnoreCase(mimeType)) {
+                return converter;
+            }
+        }
+        return null;
+    }
+
+}
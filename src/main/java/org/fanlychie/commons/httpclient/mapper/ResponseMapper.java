@@ -0,0 +1,24 @@
+package org.fanlychie.commons.httpclient.mapper;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 响应映射器, 直接从响应内容的输入流反序列化出对象, 不经过中间的字符串
+ *
+ * @param <T> 对象的类型
+ */
+@FunctionalInterface
+public interface ResponseMapper<T> {
+
+    /**
+     * 反序列化响应内容
+     *
+     * @param in      响应内容的输入流
+     * @param charset 响应内容的字符集
+     * @return 对象
+     * @throws Exception
+     */
+    T map(InputStream in, Charset charset) throws Exception;
+
+}
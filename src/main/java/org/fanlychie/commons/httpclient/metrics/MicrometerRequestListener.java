@@ -0,0 +1,115 @@
+package org.fanlychie.commons.httpclient.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.fanlychie.commons.httpclient.HttpClientUtils;
+import org.fanlychie.commons.httpclient.RequestListener;
+import org.fanlychie.commons.httpclient.RequestMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将请求指标记录到 Micrometer 的请求监听器, 需要自行引入 micrometer-core 依赖. 记录的指标:
+ * <pre>
+ * http.client.requests          请求总耗时, 标签 method、host、status、outcome
+ * http.client.requests.phase    各阶段耗时, 标签 host、phase ( dns、connect、tls、ttfb、body )
+ * http.client.requests.bytes    请求和响应内容的字节数, 标签 host、direction ( request、response )
+ * http.client.requests.retries  重试次数, 标签 host
+ * http.client.pool.connections  连接池的连接数, 标签 state ( leased、pending、available )
+ * </pre>
+ * 用法: HttpClientUtils.addRequestListener(new MicrometerRequestListener(registry));
+ */
+public class MicrometerRequestListener implements RequestListener {
+
+    /**
+     * 指标注册表
+     */
+    private final MeterRegistry registry;
+
+    /**
+     * 创建监听器并注册连接池的连接数指标
+     *
+     * @param registry 指标注册表
+     */
+    public MicrometerRequestListener(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("http.client.pool.connections", () -> HttpClientUtils.getPoolStats().getLeased())
+                .tag("state", "leased").description("借出的连接数").register(registry);
+        Gauge.builder("http.client.pool.connections", () -> HttpClientUtils.getPoolStats().getPending())
+                .tag("state", "pending").description("等待连接的请求数").register(registry);
+        Gauge.builder("http.client.pool.connections", () -> HttpClientUtils.getPoolStats().getAvailable())
+                .tag("state", "available").description("空闲的连接数").register(registry);
+    }
+
+    @Override
+    public void onComplete(RequestMetrics metrics) {
+        String host = metrics.getHost();
+        Tags tags = Tags.of("method", metrics.getMethod(), "host", host,
+                "status", metrics.getStatusCode() > 0 ? String.valueOf(metrics.getStatusCode()) : "IO_ERROR",
+                "outcome", outcome(metrics));
+        Timer.builder("http.client.requests").tags(tags).register(registry)
+                .record(metrics.getTotalTime(), TimeUnit.NANOSECONDS);
+        recordPhase(host, "dns", metrics.getDnsTime());
+        recordPhase(host, "connect", metrics.getConnectTime());
+        recordPhase(host, "tls", metrics.getTlsTime());
+        recordPhase(host, "ttfb", metrics.getTimeToFirstByte());
+        recordPhase(host, "body", metrics.getBodyReadTime());
+        if (metrics.getRequestBytes() >= 0) {
+            recordBytes(host, "request", metrics.getRequestBytes());
+        }
+        recordBytes(host, "response", metrics.getResponseBytes());
+        if (metrics.getRetries() > 0) {
+            registry.counter("http.client.requests.retries", "host", host).increment(metrics.getRetries());
+        }
+    }
+
+    /**
+     * 记录阶段耗时, 没有经历的阶段不记录
+     *
+     * @param host  主机
+     * @param phase 阶段
+     * @param nanos 耗时, 单位纳秒
+     */
+    private void recordPhase(String host, String phase, long nanos) {
+        if (nanos >= 0) {
+            Timer.builder("http.client.requests.phase").tags("host", host, "phase", phase).register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录字节数
+     *
+     * @param host      主机
+     * @param direction 方向
+     * @param bytes     字节数
+     */
+    private void recordBytes(String host, String direction, long bytes) {
+        DistributionSummary.builder("http.client.requests.bytes").baseUnit("bytes")
+                .tags("host", host, "direction", direction).register(registry).record(bytes);
+    }
+
+    /**
+     * 请求结果的分类
+     *
+     * @param metrics 请求指标
+     * @return SUCCESS、REDIRECTION、CLIENT_ERROR、SERVER_ERROR 或 UNKNOWN
+     */
+    private static String outcome(RequestMetrics metrics) {
+        int statusCode = metrics.getStatusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            return "SUCCESS";
+        } else if (statusCode >= 300 && statusCode < 400) {
+            return "REDIRECTION";
+        } else if (statusCode >= 400 && statusCode < 500) {
+            return "CLIENT_ERROR";
+        } else if (statusCode >= 500) {
+            return "SERVER_ERROR";
+        }
+        return "UNKNOWN";
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.fanlychie.commons.httpclient.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * HTTP 请求的 JFR 事件, 时间单位均为纳秒, 没有经历的阶段为 -1
+ */
+@Name("org.fanlychie.HttpRequest")
+@Label("HTTP Request")
+@Category({"HTTP Client"})
+@StackTrace(false)
+class HttpRequestEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("URI")
+    String uri;
+
+    @Label("Host")
+    String host;
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("DNS Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long dnsTime;
+
+    @Label("Connect Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long connectTime;
+
+    @Label("TLS Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long tlsTime;
+
+    @Label("Time To First Byte")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeToFirstByte;
+
+    @Label("Body Read Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long bodyReadTime;
+
+    @Label("Total Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long totalTime;
+
+    @Label("Request Bytes")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Retries")
+    int retries;
+
+    @Label("Exception")
+    String exception;
+
+}
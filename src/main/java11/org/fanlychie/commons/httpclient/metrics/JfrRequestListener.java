@@ -0,0 +1,38 @@
+package org.fanlychie.commons.httpclient.metrics;
+
+import org.fanlychie.commons.httpclient.RequestListener;
+import org.fanlychie.commons.httpclient.RequestMetrics;
+
+/**
+ * 将每个请求提交为 JFR 事件 ( org.fanlychie.HttpRequest ) 的请求监听器, 需要 JDK 11 及以上. 事件中包含各阶段耗时和字节数,
+ * 可在 JDK Mission Control 中按主机、状态码分析慢请求; 没有开启 JFR 录制时几乎没有开销
+ * <p>
+ * 用法: HttpClientUtils.addRequestListener(new JfrRequestListener());
+ */
+public class JfrRequestListener implements RequestListener {
+
+    @Override
+    public void onComplete(RequestMetrics metrics) {
+        HttpRequestEvent event = new HttpRequestEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.method = metrics.getMethod();
+        event.uri = String.valueOf(metrics.getUri());
+        event.host = metrics.getHost();
+        event.transport = metrics.getTransport().name();
+        event.statusCode = metrics.getStatusCode();
+        event.dnsTime = metrics.getDnsTime();
+        event.connectTime = metrics.getConnectTime();
+        event.tlsTime = metrics.getTlsTime();
+        event.timeToFirstByte = metrics.getTimeToFirstByte();
+        event.bodyReadTime = metrics.getBodyReadTime();
+        event.totalTime = metrics.getTotalTime();
+        event.requestBytes = metrics.getRequestBytes();
+        event.responseBytes = metrics.getResponseBytes();
+        event.retries = metrics.getRetries();
+        event.exception = metrics.getException() != null ? metrics.getException().toString() : null;
+        event.commit();
+    }
+
+}